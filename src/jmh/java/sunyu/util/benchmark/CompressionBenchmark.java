@@ -0,0 +1,71 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.codec.StringCodec;
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.CompressionCodec;
+
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压缩编解码器与不压缩编码的耗时对比，不需要 Redis，压缩率在初始化时打印
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    private static final Log log = LogFactory.get();
+
+    @Param({"10240", "51200", "204800"})
+    int size;
+
+    CompressionCodec<String, String> codec;
+    String value;
+    ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        codec = new CompressionCodec<>(StringCodec.UTF8, 4096);
+        value = json(size);
+        encoded = codec.encodeValue(value);
+        int raw = StringCodec.UTF8.encodeValue(value).remaining();
+        log.info("原始 {} 字节，压缩后 {} 字节，压缩率 {}%", raw, encoded.remaining(), encoded.remaining() * 100 / raw);
+    }
+
+    @Benchmark
+    public ByteBuffer plainEncode() {
+        return StringCodec.UTF8.encodeValue(value);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return codec.encodeValue(value);
+    }
+
+    @Benchmark
+    public String decode() {
+        return codec.decodeValue(encoded.duplicate());
+    }
+
+    private static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 128).append('[');
+        while (sb.length() < size) {
+            sb.append("{\"did\":\"").append(RandomUtil.randomNumbers(6))
+                    .append("\",\"lon\":").append(RandomUtil.randomDouble(73, 135, 6, RoundingMode.HALF_UP))
+                    .append(",\"lat\":").append(RandomUtil.randomDouble(18, 53, 6, RoundingMode.HALF_UP))
+                    .append(",\"ts\":").append(System.currentTimeMillis())
+                    .append(",\"speed\":").append(RandomUtil.randomInt(0, 120))
+                    .append(",\"status\":\"").append(RandomUtil.randomEle(new String[]{"WORKING", "IDLE", "OFFLINE"}))
+                    .append("\"},");
+        }
+        return sb.append("{}]").toString();
+    }
+
+}
@@ -0,0 +1,89 @@
+package sunyu.util.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.GeoIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 地理位置：单个与批量 geoadd，单个、批量与本地索引的最近成员查找，每次调用处理 batchSize 个坐标
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GeoBenchmark {
+    private static final String ADD_KEY = "bench:geo:add";
+    private static final double RADIUS = 50000;
+
+    @State(Scope.Thread)
+    public static class Points {
+        @Param({"1000"})
+        public int batchSize;
+        double[] lons;
+        double[] lats;
+        List<String> members;
+        GeoIndex<String, String> index;
+
+        @Setup(Level.Trial)
+        public void setupIndex(RedisState state) {
+            index = state.redis.geoIndex(RedisState.GEO_KEY, 0);
+        }
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            Random random = new Random();
+            lons = new double[batchSize];
+            lats = new double[batchSize];
+            members = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                lons[i] = 73 + random.nextDouble() * 62;
+                lats[i] = 18 + random.nextDouble() * 35;
+                members.add("point:" + random.nextInt(100000));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            index.close();
+        }
+    }
+
+    @Benchmark
+    public void geoadd(RedisState state, Points points) {
+        for (int i = 0; i < points.batchSize; i++) {
+            state.redis.geoadd(ADD_KEY, points.lons[i], points.lats[i], points.members.get(i));
+        }
+    }
+
+    @Benchmark
+    public long geoaddBulk(RedisState state, Points points) {
+        return state.redis.geoadd(ADD_KEY, points.lons, points.lats, points.members);
+    }
+
+    @Benchmark
+    public int georadiusWithCountOne(RedisState state, Points points) {
+        int found = 0;
+        for (int i = 0; i < points.batchSize; i++) {
+            if (state.redis.georadiusWithCountOne(RedisState.GEO_KEY, points.lons[i], points.lats[i], RADIUS) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<String> georadiusWithCountOneBatch(RedisState state, Points points) {
+        return state.redis.georadiusWithCountOne(RedisState.GEO_KEY, points.lons, points.lats, RADIUS);
+    }
+
+    @Benchmark
+    public List<String> geoIndexNearest(Points points) {
+        return points.index.nearest(points.lons, points.lats, RADIUS);
+    }
+
+}
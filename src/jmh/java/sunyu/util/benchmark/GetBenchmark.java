@@ -0,0 +1,29 @@
+package sunyu.util.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * get 单键读取
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class GetBenchmark {
+
+    @State(Scope.Thread)
+    public static class Keys {
+        final Random random = new Random();
+    }
+
+    @Benchmark
+    public String get(RedisState state, Keys keys) {
+        return state.redis.get(RedisState.randomKey(keys.random));
+    }
+
+}
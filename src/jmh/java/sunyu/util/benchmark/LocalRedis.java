@@ -0,0 +1,210 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 在本机启动 redis-server 进程，供基准测试使用，不依赖外部环境
+ * <p>
+ * redis-server 路径通过系统属性 benchmark.redis.server 指定，默认从 PATH 查找；
+ * 集群模式启动3个主节点并分配全部槽位，不带副本。
+ * </p>
+ */
+public class LocalRedis implements AutoCloseable {
+    private static final Log log = LogFactory.get();
+    /**
+     * 等待集群状态变为 ok 的最长时间
+     */
+    private static final long CLUSTER_TIMEOUT_MILLIS = 30_000;
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Integer> ports = new ArrayList<>();
+    private final File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "util-redis-benchmark-" + System.nanoTime()));
+
+    /**
+     * 启动单机实例
+     *
+     * @return 本地实例
+     */
+    public static LocalRedis standalone() {
+        LocalRedis redis = new LocalRedis();
+        redis.start(freePort(), false);
+        return redis;
+    }
+
+    /**
+     * 启动3个主节点的集群
+     *
+     * @return 本地实例
+     */
+    public static LocalRedis cluster() {
+        LocalRedis redis = new LocalRedis();
+        for (int i = 0; i < 3; i++) {
+            redis.start(freePort(), true);
+        }
+        int first = redis.ports.get(0);
+        for (int i = 0; i < 3; i++) {
+            int port = redis.ports.get(i);
+            List<String> args = new ArrayList<>(Arrays.asList("CLUSTER", "ADDSLOTS"));
+            for (int slot = 16384 * i / 3; slot < 16384 * (i + 1) / 3; slot++) {
+                args.add(String.valueOf(slot));
+            }
+            command(port, args.toArray(new String[0]));
+            if (port != first) {
+                command(port, "CLUSTER", "MEET", "127.0.0.1", String.valueOf(first));
+            }
+        }
+        long deadline = System.currentTimeMillis() + CLUSTER_TIMEOUT_MILLIS;
+        for (int port : redis.ports) {
+            String info;
+            while (!(info = command(port, "CLUSTER", "INFO")).contains("cluster_state:ok")) {
+                if (System.currentTimeMillis() > deadline) {
+                    redis.close();
+                    throw new IllegalStateException("集群组建超时 " + port + "\n" + info);
+                }
+                ThreadUtil.sleep(100);
+            }
+        }
+        return redis;
+    }
+
+    /**
+     * 单机为 redis://127.0.0.1:port，集群为逗号分隔的 127.0.0.1:port
+     *
+     * @return 连接地址
+     */
+    public String uri() {
+        return "redis://127.0.0.1:" + ports.get(0);
+    }
+
+    public String nodes() {
+        StringBuilder nodes = new StringBuilder();
+        for (int port : ports) {
+            nodes.append(nodes.length() == 0 ? "" : ",").append("127.0.0.1:").append(port);
+        }
+        return nodes.toString();
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        FileUtil.del(dir);
+    }
+
+    private void start(int port, boolean cluster) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                System.getProperty("benchmark.redis.server", "redis-server"),
+                "--port", String.valueOf(port),
+                "--save", "",
+                "--appendonly", "no",
+                "--protected-mode", "no",
+                "--dir", dir.getAbsolutePath()));
+        if (cluster) {
+            command.addAll(Arrays.asList("--cluster-enabled", "yes", "--cluster-config-file", "nodes-" + port + ".conf"));
+        }
+        try {
+            processes.add(new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(FileUtil.file(dir, "redis-" + port + ".log"))
+                    .start());
+        } catch (IOException e) {
+            throw new IllegalStateException("启动 redis-server 失败，可用 -Dbenchmark.redis.server 指定路径", e);
+        }
+        ports.add(port);
+        for (int i = 0; i < 100; i++) {
+            try {
+                if (command(port, "PING").contains("PONG")) {
+                    log.info("redis-server 已启动 {}", port);
+                    return;
+                }
+            } catch (IllegalStateException e) {
+                ThreadUtil.sleep(100);
+            }
+        }
+        throw new IllegalStateException("redis-server 启动超时 " + port);
+    }
+
+    /**
+     * 集群总线端口为 port + 10000，两者都要空闲
+     */
+    private static int freePort() {
+        while (true) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                int port = socket.getLocalPort();
+                if (port + 10000 > 65535) {
+                    continue;
+                }
+                try (ServerSocket bus = new ServerSocket(port + 10000)) {
+                    return port;
+                }
+            } catch (IOException ignored) {
+                // 继续尝试下一个端口
+            }
+        }
+    }
+
+    /**
+     * 发送一条 RESP 命令并读取回复，只用于初始化，回复以文本返回
+     */
+    private static String command(int port, String... args) {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write(("*" + args.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            String line = readLine(in);
+            if (line.startsWith("-")) {
+                throw new IllegalStateException(line);
+            }
+            if (line.startsWith("$")) {
+                int length = Integer.parseInt(line.substring(1));
+                if (length < 0) {
+                    return "";
+                }
+                byte[] bulk = new byte[length + 2];
+                in.readFully(bulk);
+                return new String(bulk, 0, length, StandardCharsets.UTF_8);
+            }
+            return line;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+}
@@ -0,0 +1,49 @@
+package sunyu.util.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同键数量下 mget 与分组并发的 mgetValues 对比
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MgetBenchmark {
+
+    @State(Scope.Thread)
+    public static class Keys {
+        @Param({"10", "100", "1000", "10000"})
+        public int keyCount;
+        List<String> keys;
+        String[] keyArray;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            Random random = new Random();
+            keys = new ArrayList<>(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                keys.add(RedisState.randomKey(random));
+            }
+            keyArray = keys.toArray(new String[0]);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> mget(RedisState state, Keys keys) {
+        return state.redis.mget(keys.keyArray);
+    }
+
+    @Benchmark
+    public List<String> mgetValues(RedisState state, Keys keys) {
+        return state.redis.mgetValues(keys.keys);
+    }
+
+}
@@ -0,0 +1,80 @@
+package sunyu.util.benchmark;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandType;
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.RedisMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令包装（动态代理 + 完成回调）本身的开销，命令对象不访问网络
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class ProxyBenchmark {
+
+    public interface SyncCommands {
+        String get(String key);
+    }
+
+    public interface AsyncCommands {
+        RedisFuture<String> get(String key);
+    }
+
+    static class Sync implements SyncCommands {
+        @Override
+        public String get(String key) {
+            return key;
+        }
+    }
+
+    static class Async implements AsyncCommands {
+        @Override
+        public RedisFuture<String> get(String key) {
+            return new AsyncCommand<>(new Command<>(CommandType.GET, new StatusOutput<>(StringCodec.UTF8)));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Commands {
+        final RedisMetrics metrics = new RedisMetrics(null);
+        final SyncCommands sync = new Sync();
+        final SyncCommands wrappedSync = metrics.wrap(SyncCommands.class, sync);
+        final AsyncCommands async = new Async();
+        final AsyncCommands wrappedAsync = metrics.wrap(AsyncCommands.class, async);
+    }
+
+    @Benchmark
+    public String sync(Commands commands) {
+        return commands.sync.get("key");
+    }
+
+    @Benchmark
+    public String wrappedSync(Commands commands) {
+        return commands.wrappedSync.get("key");
+    }
+
+    @Benchmark
+    public boolean async(Commands commands) {
+        return complete(commands.async.get("key"));
+    }
+
+    @Benchmark
+    public boolean wrappedAsync(Commands commands) {
+        return complete(commands.wrappedAsync.get("key"));
+    }
+
+    private static boolean complete(RedisFuture<String> future) {
+        return ((AsyncCommand<?, ?, ?>) future).complete(null);
+    }
+
+}
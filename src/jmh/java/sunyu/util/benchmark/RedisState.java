@@ -0,0 +1,83 @@
+package sunyu.util.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.AbstractRedisOperations;
+import sunyu.util.RedisClusterUtil;
+import sunyu.util.RedisUtil;
+
+import java.util.*;
+
+/**
+ * 基准测试共享状态：按 mode 启动本地单机或集群，写入测试数据并创建对应的工具类
+ */
+@State(Scope.Benchmark)
+public class RedisState {
+    /**
+     * 预先写入的字符串键数量，键为 bench:key:{i}
+     */
+    public static final int KEY_COUNT = 100000;
+    public static final String KEY_PREFIX = "bench:key:";
+    /**
+     * 预先写入的地理位置数量，键为 bench:geo
+     */
+    public static final int GEO_COUNT = 20000;
+    public static final String GEO_KEY = "bench:geo";
+
+    @Param({"standalone", "cluster"})
+    public String mode;
+
+    public AbstractRedisOperations<String, String, ?, ?> redis;
+    private AutoCloseable util;
+    private LocalRedis server;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("cluster".equals(mode)) {
+            server = LocalRedis.cluster();
+            RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder().nodes(server.nodes()).build();
+            redis = clusterUtil;
+            util = clusterUtil;
+        } else {
+            server = LocalRedis.standalone();
+            RedisUtil redisUtil = new RedisUtil.Builder().uri(server.uri()).build();
+            redis = redisUtil;
+            util = redisUtil;
+        }
+        String value = String.join("", Collections.nCopies(10, "0123456789"));
+        Map<String, String> batch = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            batch.put(KEY_PREFIX + i, value);
+            if (batch.size() == 1000) {
+                redis.getCommands().mset(batch);
+                batch.clear();
+            }
+        }
+        Random random = new Random(1);
+        double[] lons = new double[GEO_COUNT];
+        double[] lats = new double[GEO_COUNT];
+        List<String> members = new ArrayList<>(GEO_COUNT);
+        for (int i = 0; i < GEO_COUNT; i++) {
+            lons[i] = 73 + random.nextDouble() * 62;
+            lats[i] = 18 + random.nextDouble() * 35;
+            members.add("region:" + i);
+        }
+        redis.geoadd(GEO_KEY, lons, lats, members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        util.close();
+        server.close();
+    }
+
+    /**
+     * 随机键
+     *
+     * @param random 随机数
+     * @return 键
+     */
+    public static String randomKey(Random random) {
+        return KEY_PREFIX + random.nextInt(KEY_COUNT);
+    }
+
+}
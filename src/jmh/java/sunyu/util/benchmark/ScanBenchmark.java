@@ -0,0 +1,32 @@
+package sunyu.util.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 逐个游标的 scan 与按节点并行的 scanBatch 对比，每次调用扫描全部测试键
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Benchmark
+    public long scan(RedisState state) {
+        AtomicLong count = new AtomicLong();
+        state.redis.scan(RedisState.KEY_PREFIX + "*", 500, key -> count.incrementAndGet());
+        return count.get();
+    }
+
+    @Benchmark
+    public long scanBatch(RedisState state) {
+        AtomicLong count = new AtomicLong();
+        state.redis.scanBatch(RedisState.KEY_PREFIX + "*", 500, keys -> count.addAndGet(keys.size()));
+        return count.get();
+    }
+
+}
@@ -0,0 +1,73 @@
+package sunyu.util.benchmark;
+
+import cn.hutool.core.thread.ThreadUtil;
+import org.openjdk.jmh.annotations.*;
+import sunyu.util.StreamConsumer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流的吞吐量（条/秒）：批量 XADD，以及批量添加后由消费组引擎全部处理并确认
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StreamBenchmark {
+    private static final String STREAM = "bench:stream";
+    private static final int BATCH = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Streams {
+        @Param({"8"})
+        public int workers;
+        List<Map<String, String>> bodies;
+        StreamConsumer<String, String> consumer;
+        final LongAdder consumed = new LongAdder();
+
+        @Setup(Level.Trial)
+        public void setup(RedisState state) {
+            bodies = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                Map<String, String> body = new HashMap<>();
+                body.put("id", String.valueOf(i));
+                body.put("payload", "0123456789012345678901234567890123456789");
+                bodies.add(body);
+            }
+            consumer = state.redis.streamConsumer(STREAM, "bench", "consumer-1", message -> consumed.increment())
+                    .count(500)
+                    .block(100)
+                    .workers(workers)
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            consumer.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<String> xaddBatch(RedisState state, Streams streams) {
+        return state.redis.xaddBatch(STREAM, streams.bodies, 100000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long produceAndConsume(RedisState state, Streams streams) {
+        long target = streams.consumed.sum() + BATCH;
+        state.redis.xaddBatch(STREAM, streams.bodies, 100000);
+        while (streams.consumed.sum() < target) {
+            ThreadUtil.sleep(1);
+        }
+        return streams.consumed.sum();
+    }
+
+}
@@ -1,13 +1,47 @@
 package sunyu.util;
 
 import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.thread.ThreadUtil;
 import io.lettuce.core.*;
+import io.lettuce.core.api.async.*;
 import io.lettuce.core.api.sync.*;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ByteArrayOutput;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.output.KeyValueStreamingChannel;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Redis 操作抽象类
@@ -22,27 +56,47 @@ import java.util.function.Consumer;
  * <li>K - Redis 键的类型</li>
  * <li>V - Redis 值的类型</li>
  * <li>T - 继承自多个 Redis 命令接口的具体命令实现类，用于执行实际的 Redis 命令</li>
+ * <li>A - 与 T 对应的异步命令实现类，用于并发发送多个命令</li>
  * </ul>
  * </p>
  *
  * <p>
  * 主要功能：
  * <ul>
- * <li>字符串操作：获取值（get）</li>
- * <li>键操作：扫描键（scan）</li>
- * <li>地理空间操作：添加地理位置（geoadd）、根据经纬度查找最近的成员（georadiusWithCountOne）</li>
+ * <li>字符串操作：获取值（get）、批量获取值（mget、mgetValues、mgetMap）</li>
+ * <li>哈希操作：按槽位分组批量读写多个哈希键，结果为按字段分列的数组（hmgetColumns、hgetallColumns、hsetColumns）</li>
+ * <li>键操作：扫描键（scan）、按节点并行批量扫描键（scanBatch、scanBatchAsync）、
+ * 按需逐页读取的流式扫描，可同时读取值（scanStream、scanValues、scanHashes）</li>
+ * <li>地理空间操作：添加地理位置（geoadd）、根据经纬度查找最近的成员（georadiusWithCountOne），均支持批量；
+ * 很少变化的 GEO 键可以加载成本地索引（geoIndex）</li>
+ * <li>脚本：注册 Lua 脚本后用 EVALSHA 执行，NOSCRIPT 时自动加载（script、eval、evalAsync）</li>
+ * <li>流：消费组引擎（streamConsumer），批量添加消息（xaddBatch）</li>
+ * <li>大值：分块读取到输出流（readStream），分块写入临时键后原子替换（writeStream），内存占用与值的大小无关</li>
+ * <li>快照：按节点并行 DUMP 导出到文件（exportKeys），按槽位分组批量 RESTORE 导入（importKeys）</li>
+ * <li>批量执行：在专用连接上排队多个命令后一次性发送（pipeline）</li>
+ * <li>异步写缓冲：合并同一个键的重复写入，按数量或时间批量写出（writeBehind）</li>
+ * <li>近端缓存：开启后 get、mget 优先读取本地缓存，由键空间通知驱动失效（getNearCache）</li>
+ * <li>读取合并：开启后同一个键的并发 get 共享一个 GET（getSingleFlight），getOrLoad 的加载函数同一时间只执行一次</li>
+ * <li>启动方式：构建时同步连接、首次使用时连接或后台并行连接并预热，ready() 返回就绪状态</li>
+ * <li>多连接：普通命令可分散到多个连接（轮流或最少未完成），阻塞命令和事务借用独占连接（withConnection）</li>
+ * <li>命令指标：开启后统计每个命令和节点的延迟分布、吞吐量、失败和超时（getMetrics）</li>
+ * <li>热点键和大键：开启后按采样率记录访问，维护访问次数和字节数的 top-K（getKeySampler），
+ * 按节点并行扫描分析大键（analyzeBigKeys）</li>
+ * <li>读取路由：可按工具类或单次调用选择读取节点（getCommands(ReadFrom)），支持按节点延迟选择和对冲读取（hedgedRead）</li>
+ * <li>超时和熔断：读、写、扫描、阻塞命令分别设置超时，withTimeout 范围内的命令共用截止时间，可开启按节点的熔断和并发限制（getCircuitBreakers）</li>
  * </ul>
  * </p>
  *
  * <p>
  * 使用方式：
- * 1. 继承此类并实现 getCommands() 方法，返回具体的 Redis 命令实现
+ * 1. 继承此类并实现 getCommands()、getAsyncCommands()、getCodec() 方法，返回具体的 Redis 命令实现及编解码器
  * 2. 调用提供的方法执行相应的 Redis 操作
  * </p>
  *
  * @param <K> Redis 键的类型
  * @param <V> Redis 值的类型
  * @param <T> Redis 命令实现类，需继承自多个 Redis 命令接口
+ * @param <A> Redis 异步命令实现类，需继承自多个 Redis 异步命令接口
  * @author SunYu
  */
 public abstract class AbstractRedisOperations<K, V, T extends
@@ -56,66 +110,1104 @@ public abstract class AbstractRedisOperations<K, V, T extends
         & RedisSetCommands<K, V>
         & RedisSortedSetCommands<K, V>
         & RedisStreamCommands<K, V>
-        & RedisStringCommands<K, V>> {
+        & RedisStringCommands<K, V>, A extends
+        BaseRedisAsyncCommands<K, V>
+        & RedisGeoAsyncCommands<K, V>
+        & RedisHashAsyncCommands<K, V>
+        & RedisHLLAsyncCommands<K, V>
+        & RedisKeyAsyncCommands<K, V>
+        & RedisListAsyncCommands<K, V>
+        & RedisScriptingAsyncCommands<K, V>
+        & RedisServerAsyncCommands<K, V>
+        & RedisSetAsyncCommands<K, V>
+        & RedisSortedSetAsyncCommands<K, V>
+        & RedisStreamAsyncCommands<K, V>
+        & RedisStringAsyncCommands<K, V>> {
+    /**
+     * 批量获取值时默认每个 MGET 命令最多包含的键数量
+     */
+    public static final int DEFAULT_MGET_CHUNK_SIZE = 500;
+    /**
+     * writeStream 临时键的过期时间(秒)
+     */
+    private static final long TEMP_KEY_TTL = 3600;
+
+    /**
+     * 批量添加经纬度时默认每个 GEOADD 命令最多包含的成员数量
+     */
+    public static final int DEFAULT_GEOADD_CHUNK_SIZE = 500;
+
+    /**
+     * 读、写、扫描、阻塞命令默认的超时时间(毫秒)
+     */
+    public static final long DEFAULT_COMMAND_TIMEOUT = 30000;
+
+    /**
+     * withConnection 独占连接池默认最大连接数
+     */
+    public static final int DEFAULT_MAX_LEASED_CONNECTIONS = 8;
+
+    private static final ThreadFactory STARTUP_THREAD_FACTORY = ThreadUtil.newNamedThreadFactory("redis-startup-", true);
+
+    /**
+     * 批量执行专用连接的排队锁，保证一批命令连续写入并一起发送
+     */
+    private final ReentrantLock pipelineLock = new ReentrantLock();
+
+    /**
+     * 已注册的 Lua 脚本，键为 SHA1
+     */
+    private final Map<String, LuaScript> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * getOrLoad 的加载合并，与 get 的读取合并分开，加载函数内部读取同一个键时不会等待自己
+     */
+    private final SingleFlight<K, V> loads = new SingleFlight<>();
+
+    private final Object connectLock = new Object();
+    private final AtomicBoolean connecting = new AtomicBoolean();
+    private StartupMode startupMode = StartupMode.EAGER;
+    private volatile boolean connected;
+    /**
+     * WARM_UP 的后台线程正在建立连接，由它在预热完成后完成 ready，受 connectLock 保护
+     */
+    private boolean warmingUp;
+    private final AtomicReference<CompletableFuture<Void>> ready = new AtomicReference<>(new CompletableFuture<>());
+
     public abstract T getCommands();
 
     /**
-     * 获取值
+     * 建立连接，由 {@link #ensureConnected()} 调用，只会成功执行一次
+     */
+    protected abstract void connect();
+
+    /**
+     * 预热连接，WARM_UP 启动方式在连接建立后调用，默认不做任何事
+     */
+    protected void warmUp() {
+    }
+
+    /**
+     * 按启动方式启动，子类在构造方法最后调用
+     *
+     * @param startupMode 启动方式
+     */
+    protected void start(StartupMode startupMode) {
+        this.startupMode = startupMode;
+        switch (startupMode) {
+            case LAZY:
+                break;
+            case WARM_UP:
+                warmingUp = true;
+                STARTUP_THREAD_FACTORY.newThread(this::connectAndWarmUp).start();
+                break;
+            default:
+                ensureConnected();
+        }
+    }
+
+    /**
+     * WARM_UP 的后台线程：建立连接后预热，预热结束时完成 ready；
+     * 建立连接失败时 ready 已异常完成，之后由使用时的重试建立连接并完成新的 ready
+     */
+    private void connectAndWarmUp() {
+        try {
+            ensureConnected();
+        } catch (RuntimeException e) {
+            return;
+        } finally {
+            synchronized (connectLock) {
+                warmingUp = false;
+            }
+        }
+        CompletableFuture<Void> future = ready.get();
+        try {
+            warmUp();
+            future.complete(null);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 确保连接已经建立，没有建立时在当前线程建立，其它线程等待
+     * <p>
+     * 建立失败时抛出异常，下次使用时重试
+     * </p>
+     */
+    protected void ensureConnected() {
+        if (connected) {
+            return;
+        }
+        synchronized (connectLock) {
+            if (connected) {
+                return;
+            }
+            CompletableFuture<Void> future = renewReady();
+            try {
+                connect();
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+            connected = true;
+            // WARM_UP 的后台线程在预热后完成；其它情况（包括后台连接失败后的重试）连接建立即完成
+            if (!warmingUp) {
+                future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 上一次连接失败时换成新的 Future，供这一次连接完成
+     */
+    private CompletableFuture<Void> renewReady() {
+        CompletableFuture<Void> current = ready.get();
+        if (!current.isCompletedExceptionally()) {
+            return current;
+        }
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        return ready.compareAndSet(current, next) ? next : ready.get();
+    }
+
+    /**
+     * 获取就绪状态
+     * <p>
+     * EAGER 构建后即完成；LAZY 尚未连接时在后台开始建立连接（同时只有一次），连接建立后完成，
+     * 上一次连接失败时返回这一次连接对应的新 Future；
+     * WARM_UP 在所有节点连接建立并预热后完成。连接失败时异常完成。
+     * </p>
+     *
+     * @return 就绪后完成的 Future
+     */
+    public CompletableFuture<Void> ready() {
+        if (connected || startupMode != StartupMode.LAZY) {
+            return ready.get();
+        }
+        CompletableFuture<Void> future = renewReady();
+        if (connecting.compareAndSet(false, true)) {
+            STARTUP_THREAD_FACTORY.newThread(this::connectInBackground).start();
+        }
+        return future;
+    }
+
+    /**
+     * LAZY 的后台连接，失败时 ready 已异常完成
+     */
+    private void connectInBackground() {
+        try {
+            ensureConnected();
+        } catch (RuntimeException ignored) {
+            // ready 已异常完成，下次调用 ready() 或使用时重试
+        } finally {
+            connecting.set(false);
+        }
+        // 失败期间又有调用方换上了新的 Future 在等待，为它再连接一次
+        if (!connected && !ready.get().isDone()) {
+            ready();
+        }
+    }
+
+    /**
+     * 是否已经建立连接
+     *
+     * @return 是否已连接
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 获取异步命令对象，与 getCommands() 共用同一组连接
+     *
+     * @return 异步命令对象
+     */
+    public abstract A getAsyncCommands();
+
+    /**
+     * 获取按指定读取策略路由读命令的同步命令对象，用于单次调用改变读取节点
+     * <p>
+     * 每种读取策略首次使用时建立一个连接并缓存，之后复用，例如 ReadFrom.MASTER 用于刚写入后立即读取
+     * </p>
+     *
+     * @param readFrom 读取策略
+     * @return 同步命令对象
+     */
+    public abstract T getCommands(ReadFrom readFrom);
+
+    /**
+     * 获取按指定读取策略路由读命令的异步命令对象，与 getCommands(ReadFrom) 共用连接
+     *
+     * @param readFrom 读取策略
+     * @return 异步命令对象
+     */
+    public abstract A getAsyncCommands(ReadFrom readFrom);
+
+    /**
+     * 借用一个独占连接执行操作，适合阻塞命令、事务和大值传输，避免阻塞共用连接上的其它调用
+     *
+     * @param action 使用同步命令对象的操作
+     * @param <R>    结果类型
+     * @return 操作结果
+     */
+    public abstract <R> R withConnection(Function<T, R> action);
+
+    /**
+     * 获取连接使用的编解码器
+     *
+     * @return 编解码器
+     */
+    protected abstract RedisCodec<K, V> getCodec();
+
+    /**
+     * 获取批量执行专用连接的异步命令对象
+     * <p>
+     * 该连接关闭了命令自动发送（autoFlushCommands=false），首次调用时建立，只能在 pipeline 方法内使用
+     * </p>
+     *
+     * @return 异步命令对象
+     */
+    protected abstract A getPipelineCommands();
+
+    /**
+     * 获取批量获取值时每个 MGET 命令最多包含的键数量
+     *
+     * @return 键数量
+     */
+    protected int getMgetChunkSize() {
+        return DEFAULT_MGET_CHUNK_SIZE;
+    }
+
+    /**
+     * 获取值
+     *
+     * @param key 键
+     * @return 值
+     */
+    public V get(K key) {
+        NearCache<K, V> nearCache = getNearCache();
+        if (nearCache == null || !nearCache.accept(key)) {
+            return fetch(key, false);
+        }
+        V value = nearCache.get(key);
+        if (value != null) {
+            return value;
+        }
+        Object token = nearCache.beginLoad(key);
+        try {
+            value = fetch(key, true);
+        } finally {
+            nearCache.completeLoad(key, token, value);
+        }
+        return value;
+    }
+
+    /**
+     * 在截止时间内获取值，超时后以 RedisCommandTimeoutException 失败，不等待默认的读超时
+     *
+     * @param key     键
+     * @param timeout 超时时间(毫秒)
+     * @return 值
+     */
+    public V get(K key, long timeout) {
+        return withTimeout(timeout, () -> get(key));
+    }
+
+    /**
+     * 在截止时间内执行操作，操作中当前线程发出的所有命令共用剩余时间，见 {@link CommandTimeouts}
+     *
+     * <pre>
+     *     Map&lt;String, String&gt; values = redisUtil.withTimeout(50, () -&gt; redisUtil.mget("k1", "k2"));
+     * </pre>
+     *
+     * @param timeout 超时时间(毫秒)
+     * @param action  操作
+     * @param <R>     结果类型
+     * @return 操作结果
+     */
+    public <R> R withTimeout(long timeout, Supplier<R> action) {
+        CommandTimeouts timeouts = getCommandTimeouts();
+        return timeouts == null ? action.get() : timeouts.withTimeout(timeout, action);
+    }
+
+    /**
+     * @param upstream 是否从主节点读取：近端缓存的失效通知只来自主节点，从落后的从节点读到旧值会一直留在缓存中
+     */
+    private V fetch(K key, boolean upstream) {
+        SingleFlight<K, V> singleFlight = getSingleFlight();
+        if (singleFlight == null) {
+            return read(key, upstream);
+        }
+        return singleFlight.execute(key, () -> read(key, upstream));
+    }
+
+    private V read(K key, boolean upstream) {
+        V value;
+        if (upstream) {
+            value = getCommands(ReadFrom.UPSTREAM).get(key);
+        } else {
+            value = getHedgedReads() == null ? getCommands().get(key) : join(hedgedRead(c -> c.get(key)));
+        }
+        sample(key, value);
+        return value;
+    }
+
+    /**
+     * 按采样率记录一次访问，见 {@link KeySampler}
+     *
+     * @param key   键
+     * @param value 读到或写入的值
+     */
+    protected void sample(K key, V value) {
+        KeySampler sampler = getKeySampler();
+        if (sampler != null && sampler.sample()) {
+            sampler.record(keyToString(key), sizeOf(value));
+        }
+    }
+
+    private long sizeOf(V value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        }
+        return getCodec().encodeValue(value).remaining();
+    }
+
+    /**
+     * 获取热点键和大键采样器
+     *
+     * @return 采样器，未开启时为 null
+     */
+    public KeySampler getKeySampler() {
+        return null;
+    }
+
+    /**
+     * 分析各节点上的大键，集群每个主节点一个线程并行分析，见 {@link BigKeys}
+     * <p>
+     * 会对每个键发出 TYPE、MEMORY USAGE 和一个长度命令，建议在业务低峰期或从节点较空闲时执行
+     * </p>
+     *
+     * @param match 可以使用*匹配
+     * @param limit 每批扫描多少条，建议500
+     * @param top   每个节点保留的大键数量
+     * @return 各节点的分析结果，键为 host:port
+     */
+    public Map<String, BigKeys> analyzeBigKeys(K match, int limit, int top) {
+        Map<String, ? extends RedisClusterAsyncCommands<K, V>> nodes = getNodeCommands();
+        ScanArgs scanArgs = new ScanArgs().match(keyToString(match)).limit(limit);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nodes.size()),
+                ThreadUtil.newNamedThreadFactory("redis-analyze-", true));
+        try {
+            Map<String, CompletableFuture<BigKeys>> tasks = new TreeMap<>();
+            nodes.forEach((node, commands) -> tasks.put(node, CompletableFuture.supplyAsync(
+                    () -> BigKeys.analyze(node, commands, scanArgs, top, this::keyToString), executor)));
+            Map<String, BigKeys> results = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<BigKeys>> e : tasks.entrySet()) {
+                results.put(e.getKey(), join(e.getValue()));
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 导出键到快照文件，集群每个主节点一个线程并行导出，见 {@link KeySnapshot}
+     *
+     * <pre>
+     *     KeySnapshot result = redis.exportKeys("farm:*", 1000, Paths.get("farm.snapshot"));
+     * </pre>
+     *
+     * @param match 可以使用*匹配
+     * @param limit 每批扫描多少条，建议1000
+     * @param file  文件，已存在时覆盖
+     * @return 导出的键数量、字节数和吞吐量
+     */
+    public KeySnapshot exportKeys(K match, int limit, Path file) {
+        ScanArgs scanArgs = new ScanArgs().match(keyToString(match)).limit(limit);
+        return KeySnapshot.export(getNodeCommands(), getCodec(), scanArgs, file);
+    }
+
+    /**
+     * 从快照文件导入键，每 batchSize 条按槽位分组后批量发送 RESTORE，见 {@link KeySnapshot}
+     *
+     * @param file      文件
+     * @param batchSize 每批的键数量，建议1000
+     * @param replace   键已存在时是否覆盖，不覆盖时计为失败
+     * @return 导入的键数量、失败数量和吞吐量
+     */
+    public KeySnapshot importKeys(Path file, int batchSize, boolean replace) {
+        return KeySnapshot.restore(this, file, batchSize, replace);
+    }
+
+    /**
+     * 获取各节点的异步命令对象，单机为当前连接，集群为每个主节点
+     *
+     * @return 节点名称（host:port）和命令对象
+     */
+    protected abstract Map<String, ? extends RedisClusterAsyncCommands<K, V>> getNodeCommands();
+
+    /**
+     * 对冲读取，开启后超过阈值未返回时在延迟第二低的节点上再读一次，使用先返回的结果，见 {@link HedgedReads}
+     *
+     * <pre>
+     *     Map&lt;String, String&gt; map = redis.hedgedRead(c -&gt; c.hgetall("farm:realtime:600044")).join();
+     * </pre>
+     *
+     * @param read 使用异步命令对象发出一个只读命令
+     * @param <R>  结果类型
+     * @return 读取结果，未开启对冲时直接在普通连接上读取
+     */
+    public <R> CompletableFuture<R> hedgedRead(Function<A, RedisFuture<R>> read) {
+        HedgedReads hedgedReads = getHedgedReads();
+        A primary = getAsyncCommands();
+        if (hedgedReads == null) {
+            return read.apply(primary).toCompletableFuture();
+        }
+        A backup = getHedgeCommands();
+        return hedgedReads.read(() -> read.apply(primary), () -> read.apply(backup));
+    }
+
+    /**
+     * 获取对冲读取
+     *
+     * @return 对冲读取，未开启时为 null
+     */
+    public HedgedReads getHedgedReads() {
+        return null;
+    }
+
+    /**
+     * 获取对冲连接的异步命令对象，开启对冲读取时由子类提供
+     *
+     * @return 异步命令对象
+     */
+    protected A getHedgeCommands() {
+        return null;
+    }
+
+    /**
+     * 获取各节点的延迟跟踪
+     *
+     * @return 延迟跟踪，未开启按延迟读取或对冲读取时为 null
+     */
+    public NodeLatencies getNodeLatencies() {
+        return null;
+    }
+
+    /**
+     * 获取值，不存在时调用加载函数并写回 Redis
+     * <p>
+     * 同一个键同时只有一个线程执行加载，其他线程等待并共享结果；加载前会再读一次，
+     * 避免刚由其他线程写回的值被重复加载。加载函数返回 null 时不写回。
+     * </p>
+     *
+     * @param key    键
+     * @param loader 加载函数，例如从数据库读取
+     * @param ttl    写回的过期时间(秒)，小于等于0表示不过期
+     * @return 值
+     */
+    public V getOrLoad(K key, Function<K, V> loader, long ttl) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return loads.execute(key, () -> {
+            T commands = getCommands();
+            V loaded = commands.get(key);
+            if (loaded != null) {
+                return loaded;
+            }
+            loaded = loader.apply(key);
+            if (loaded != null) {
+                if (ttl > 0) {
+                    commands.setex(key, ttl, loaded);
+                } else {
+                    commands.set(key, loaded);
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 获取 get 使用的读取合并
+     *
+     * @return 读取合并，未开启时为 null
+     */
+    public SingleFlight<K, V> getSingleFlight() {
+        return null;
+    }
+
+    /**
+     * 获取命令超时设置
+     *
+     * @return 命令超时
+     */
+    public CommandTimeouts getCommandTimeouts() {
+        return null;
+    }
+
+    /**
+     * 获取节点熔断
+     *
+     * @return 节点熔断，未开启时为 null
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return null;
+    }
+
+    /**
+     * 获取近端缓存
+     *
+     * @return 近端缓存，未开启时为 null
+     */
+    public NearCache<K, V> getNearCache() {
+        return null;
+    }
+
+    /**
+     * 获取命令指标
+     *
+     * @return 命令指标，未开启时为 null
+     */
+    public RedisMetrics getMetrics() {
+        return null;
+    }
+
+    /**
+     * 扫描key
+     *
+     * @param match   可以使用*匹配
+     * @param limit   限制每批读取多少条，建议500
+     * @param handler 处理器
+     */
+    public void scan(K match, int limit, Consumer<K> handler) {
+        T commands = getCommands();
+        KeyScanCursor<K> scanCursor = null;
+        ScanArgs scanArgs = new ScanArgs().match(keyToString(match)).limit(limit);
+        do {
+            scanCursor = (scanCursor == null) ? commands.scan(scanArgs) : commands.scan(scanCursor, scanArgs);
+            for (K key : scanCursor.getKeys()) {
+                handler.accept(key);
+            }
+        } while (!scanCursor.isFinished());
+    }
+
+    /**
+     * 批量扫描key
+     * <p>
+     * 每读取一批key调用一次处理器，并行度为全部扫描目标数（单机为1，集群为主节点数）
+     * </p>
+     *
+     * @param match   可以使用*匹配
+     * @param limit   限制每批读取多少条，建议500
+     * @param handler 批量处理器，并行扫描时会被多个线程同时调用，需自行保证线程安全
+     */
+    public void scanBatch(K match, int limit, Consumer<List<K>> handler) {
+        join(scanBatchAsync(match, limit, Integer.MAX_VALUE, handler));
+    }
+
+    /**
+     * 异步批量扫描key
+     * <p>
+     * 在每个扫描目标（单机为当前连接，集群为每个主节点）上各自维护一个独立的 SCAN 游标，
+     * 最多同时扫描 parallelism 个目标，每读取一批key调用一次处理器。
+     * </p>
+     * <p>
+     * 调用返回的 future 的 cancel 方法可以取消扫描，各游标会在当前批次处理完后停止；
+     * 任意一个目标扫描失败或处理器抛出异常时，future 以该异常结束，其余游标也随之停止。
+     * </p>
+     *
+     * @param match       可以使用*匹配
+     * @param limit       限制每批读取多少条，建议500
+     * @param parallelism 并行度，最多同时扫描多少个目标
+     * @param handler     批量处理器，会被多个线程同时调用，需自行保证线程安全
+     * @return 扫描结果，全部目标扫描完成后结束
+     */
+    public CompletableFuture<Void> scanBatchAsync(K match, int limit, int parallelism, Consumer<List<K>> handler) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        List<? extends RedisKeyCommands<K, V>> targets = getScanTargets();
+        if (targets.isEmpty()) {
+            result.complete(null);
+            return result;
+        }
+        int threads = Math.max(1, Math.min(parallelism, targets.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, ThreadUtil.newNamedThreadFactory("redis-scan-", true));
+        ScanArgs scanArgs = new ScanArgs().match(keyToString(match)).limit(limit);
+        CompletableFuture<?>[] tasks = new CompletableFuture[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            RedisKeyCommands<K, V> commands = targets.get(i);
+            tasks[i] = CompletableFuture.runAsync(() -> scanCursor(commands, scanArgs, handler, result), executor);
+        }
+        CompletableFuture.allOf(tasks).whenComplete((v, e) -> {
+            executor.shutdown();
+            result.complete(null);
+        });
+        return result;
+    }
+
+    /**
+     * 获取扫描目标
+     * <p>
+     * 默认只有当前连接一个目标，集群实现返回每个主节点的命令对象
+     * </p>
+     *
+     * @return 扫描目标
+     */
+    protected List<? extends RedisKeyCommands<K, V>> getScanTargets() {
+        return Collections.singletonList(getCommands());
+    }
+
+    /**
+     * 获取异步扫描目标，与 getScanTargets() 一一对应
+     *
+     * @return 异步扫描目标
+     */
+    protected List<? extends RedisKeyAsyncCommands<K, V>> getAsyncScanTargets() {
+        return Collections.singletonList(getAsyncCommands());
+    }
+
+    /**
+     * 以流的方式扫描键
+     * <p>
+     * 按需逐页读取：消费当前页时后台已在读取下一页，内存中最多只有两页，与键的总数无关。
+     * 集群依次扫描每个主节点。
+     * </p>
+     *
+     * @param match 可以使用*匹配
+     * @param limit 每页读取多少条，建议500
+     * @return 键的流
+     */
+    public Stream<K> scanStream(K match, int limit) {
+        return scanStream(match, limit, CompletableFuture::completedFuture);
+    }
+
+    /**
+     * 以流的方式扫描字符串键并读取值
+     * <p>
+     * 每页键扫描出来后立即用 MGET 读取值（集群按槽位分组并发），同时开始读取下一页；
+     * 扫描和读取之间被删除或过期的键不会出现在结果中。
+     * </p>
+     *
+     * @param match 可以使用*匹配，只应匹配字符串类型的键
+     * @param limit 每页读取多少条，建议500
+     * @return 键值的流
+     */
+    public Stream<KeyValue<K, V>> scanValues(K match, int limit) {
+        return scanStream(match, limit, keys -> mgetValuesAsync(keys, getMgetChunkSize()).thenApply(values -> {
+            List<KeyValue<K, V>> page = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                if (values.get(i) != null) {
+                    page.add(KeyValue.just(keys.get(i), values.get(i)));
+                }
+            }
+            return page;
+        }));
+    }
+
+    /**
+     * 以流的方式扫描哈希键并读取全部字段
+     * <p>
+     * 每页键扫描出来后并发发送 HGETALL，同时开始读取下一页；扫描和读取之间被删除的键不会出现在结果中
+     * </p>
+     *
+     * @param match 可以使用*匹配，只应匹配哈希类型的键
+     * @param limit 每页读取多少条，建议100
+     * @return 键和全部字段的流
+     */
+    public Stream<KeyValue<K, Map<K, V>>> scanHashes(K match, int limit) {
+        return scanStream(match, limit, keys -> {
+            A async = getAsyncCommands();
+            List<CompletableFuture<Map<K, V>>> futures = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                futures.add(async.hgetall(key).toCompletableFuture());
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                List<KeyValue<K, Map<K, V>>> page = new ArrayList<>(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    Map<K, V> hash = futures.get(i).join();
+                    if (!hash.isEmpty()) {
+                        page.add(KeyValue.just(keys.get(i), hash));
+                    }
+                }
+                return page;
+            });
+        });
+    }
+
+    private <R> Stream<R> scanStream(K match, int limit, Function<List<K>, CompletableFuture<List<R>>> loader) {
+        ScanIterator<R> iterator = new ScanIterator<>(getAsyncScanTargets(),
+                new ScanArgs().match(keyToString(match)).limit(limit), loader);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 预读一页的扫描迭代器
+     * <p>
+     * 拿到一页后立即异步发起同一目标的下一次 SCAN 及其值的读取，目标扫描结束后换下一个目标
+     * </p>
+     */
+    private class ScanIterator<R> implements Iterator<R> {
+        private final List<? extends RedisKeyAsyncCommands<K, V>> targets;
+        private final ScanArgs scanArgs;
+        private final Function<List<K>, CompletableFuture<List<R>>> loader;
+        private int target;
+        private CompletableFuture<Page<R>> next;
+        private Iterator<R> current = Collections.emptyIterator();
+
+        ScanIterator(List<? extends RedisKeyAsyncCommands<K, V>> targets, ScanArgs scanArgs,
+                     Function<List<K>, CompletableFuture<List<R>>> loader) {
+            this.targets = targets;
+            this.scanArgs = scanArgs;
+            this.loader = loader;
+            this.next = targets.isEmpty() ? null : load(null);
+        }
+
+        private CompletableFuture<Page<R>> load(KeyScanCursor<K> cursor) {
+            RedisKeyAsyncCommands<K, V> commands = targets.get(target);
+            RedisFuture<KeyScanCursor<K>> scan = cursor == null ? commands.scan(scanArgs) : commands.scan(cursor, scanArgs);
+            return scan.toCompletableFuture().thenCompose(scanCursor -> loader.apply(scanCursor.getKeys())
+                    .thenApply(items -> new Page<>(scanCursor, items)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next == null) {
+                    return false;
+                }
+                Page<R> page = join(next);
+                if (!page.cursor.isFinished()) {
+                    next = load(page.cursor);
+                } else if (++target < targets.size()) {
+                    next = load(null);
+                } else {
+                    next = null;
+                }
+                current = page.items.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+
+    private class Page<R> {
+        final KeyScanCursor<K> cursor;
+        final List<R> items;
+
+        Page(KeyScanCursor<K> cursor, List<R> items) {
+            this.cursor = cursor;
+            this.items = items;
+        }
+    }
+
+    /**
+     * 在单个目标上遍历游标，直到游标结束或 result 已结束（取消或失败）
+     */
+    private void scanCursor(RedisKeyCommands<K, V> commands, ScanArgs scanArgs, Consumer<List<K>> handler,
+                            CompletableFuture<Void> result) {
+        try {
+            KeyScanCursor<K> scanCursor = null;
+            do {
+                scanCursor = (scanCursor == null) ? commands.scan(scanArgs) : commands.scan(scanCursor, scanArgs);
+                if (!scanCursor.getKeys().isEmpty() && !result.isDone()) {
+                    handler.accept(scanCursor.getKeys());
+                }
+            } while (!scanCursor.isFinished() && !result.isDone());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 将键转换成字符串，用于 SCAN 的 MATCH 等只接受字符串的参数
+     *
+     * @param key 键
+     * @return 字符串形式的键
+     */
+    protected String keyToString(K key) {
+        if (key instanceof String) {
+            return (String) key;
+        }
+        return StringCodec.UTF8.decodeKey(getCodec().encodeKey(key));
+    }
+
+    /**
+     * 等待 future 结束，并将 CompletionException 还原为原始的运行时异常
+     *
+     * @param future future
+     * @param <R>    结果类型
+     * @return 结果
+     */
+    protected static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 获取指定经纬度距离最近的一个成员
+     *
+     * @param key 键
+     * @param lon 经度
+     * @param lat 纬度
+     * @param m   距离(米)
+     * @return 成员
+     */
+    public V georadiusWithCountOne(K key, double lon, double lat, double m) {
+        // GEORADIUS places {longitude} {latitude} {radius} m COUNT 1 ASC
+        GeoArgs args = new GeoArgs()
+                .asc() // 按距离升序排列
+                .withCount(1); // 只返回最近的1个结果
+        List<GeoWithin<V>> results;
+        T commands = getCommands();
+        results = commands.georadius(
+                key, // key
+                lon, // 经度
+                lat, // 纬度
+                m, // 距离
+                GeoArgs.Unit.m, // 单位（米）
+                args // 参数配置
+        );
+        if (CollUtil.isNotEmpty(results)) {
+            return results.get(0).getMember();
+        }
+        return null;
+    }
+
+    /**
+     * 把 GEO 键加载成本地索引
+     * <p>
+     * 索引查找最近成员不再访问 Redis，结果与 georadiusWithCountOne 一致，后台按间隔检查变化并重新加载，
+     * 不再使用时需要调用 close 停止后台检查
+     * </p>
+     *
+     * @param key             键
+     * @param refreshInterval 检查变化的间隔(秒)，小于等于0表示不自动检查
+     * @return 本地索引
+     */
+    public GeoIndex<K, V> geoIndex(K key, long refreshInterval) {
+        return new GeoIndex<>(getCommands(), key, refreshInterval);
+    }
+
+    /**
+     * 分块读取大值写入输出流
+     * <p>
+     * 先用 STRLEN 取得长度，再按 chunkSize 逐段 GETRANGE，写出当前段时下一段已在读取，内存中最多两段；
+     * 读到的是原始字节，不经过编解码器（包括值压缩）。分块命令与其他命令交错发送，不会长时间占用共用连接。
+     * 读取期间值被整体替换（例如 writeStream 完成）时可能读到新旧两部分，需要一致性时由调用方加锁或使用版本号。
+     * </p>
+     *
+     * @param key       键
+     * @param out       输出流，不会被关闭
+     * @param chunkSize 每段的字节数，建议 64KB 到 1MB
+     * @return 读取的字节数，键不存在时为0
+     */
+    public long readStream(K key, OutputStream out, int chunkSize) {
+        return readStream(key, Channels.newChannel(out), chunkSize);
+    }
+
+    /**
+     * 分块读取大值写入通道，见 {@link #readStream(Object, OutputStream, int)}
+     *
+     * @param key       键
+     * @param channel   通道，不会被关闭
+     * @param chunkSize 每段的字节数
+     * @return 读取的字节数，键不存在时为0
+     */
+    public long readStream(K key, WritableByteChannel channel, int chunkSize) {
+        A async = getAsyncCommands();
+        long length = join(async.strlen(key).toCompletableFuture());
+        CompletableFuture<byte[]> next = length > 0 ? getRange(async, key, 0, Math.min(length, chunkSize) - 1) : null;
+        long offset = 0;
+        while (next != null) {
+            byte[] chunk = join(next);
+            offset += chunk.length;
+            next = chunk.length > 0 && offset < length ? getRange(async, key, offset, Math.min(length, offset + chunkSize) - 1) : null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+        }
+        return offset;
+    }
+
+    private CompletableFuture<byte[]> getRange(A async, K key, long start, long end) {
+        CommandArgs<K, V> args = new CommandArgs<>(getCodec()).addKey(key).add(start).add(end);
+        return async.dispatch(CommandType.GETRANGE, new ByteArrayOutput<>(getCodec()), args).toCompletableFuture();
+    }
+
+    /**
+     * 从输入流分块写入大值，写完后原子替换
+     * <p>
+     * 按 chunkSize 逐段 APPEND 到一个临时键（与目标键在同一个槽位），全部写完后 RENAME 为目标键，
+     * 读取方不会看到写了一半的值；发送当前段时读取下一段，内存中最多两段。写入的是原始字节，不经过编解码器。
+     * 临时键设置了1小时过期，写入失败时删除，进程中途退出也会自动清理；写完后先把临时键的过期时间改为 ttl 再 RENAME。
+     * </p>
+     *
+     * @param key       键
+     * @param in        输入流，不会被关闭
+     * @param chunkSize 每段的字节数，建议 64KB 到 1MB
+     * @param ttl       过期时间(秒)，小于等于0表示不过期
+     * @return 写入的字节数
+     */
+    public long writeStream(K key, InputStream in, int chunkSize, long ttl) {
+        A async = getAsyncCommands();
+        K temp = tempKey(key);
+        byte[][] buffers = {new byte[chunkSize], new byte[chunkSize]};
+        long total = 0;
+        try {
+            CommandArgs<K, V> create = new CommandArgs<>(getCodec()).addKey(temp).add(new byte[0]).add("EX").add(TEMP_KEY_TTL);
+            join(async.dispatch(CommandType.SET, new StatusOutput<>(getCodec()), create).toCompletableFuture());
+            CompletableFuture<Long> pending = null;
+            for (int i = 0; ; i ^= 1) {
+                int n = readFully(in, buffers[i]);
+                if (pending != null) {
+                    // 上一段发送完成后它的缓冲区才能复用
+                    join(pending);
+                }
+                if (n <= 0) {
+                    break;
+                }
+                byte[] chunk = n == chunkSize ? buffers[i] : Arrays.copyOf(buffers[i], n);
+                CommandArgs<K, V> args = new CommandArgs<>(getCodec()).addKey(temp).add(chunk);
+                pending = async.dispatch(CommandType.APPEND, new IntegerOutput<>(getCodec()), args).toCompletableFuture();
+                total += n;
+            }
+            // 先在临时键上设置最终的过期时间，RENAME 会带上它，替换和过期时间一起生效
+            join((ttl > 0 ? async.expire(temp, ttl) : async.persist(temp)).toCompletableFuture());
+            join(async.rename(temp, key).toCompletableFuture());
+        } catch (RuntimeException e) {
+            async.del(temp);
+            throw e;
+        }
+        return total;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) {
+        int n = 0;
+        try {
+            while (n < buffer.length) {
+                int read = in.read(buffer, n, buffer.length - n);
+                if (read < 0) {
+                    break;
+                }
+                n += read;
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return n;
+    }
+
+    /**
+     * 生成与 key 在同一个槽位的临时键，保证集群中可以 RENAME
+     */
+    private K tempKey(K key) {
+        ByteBuffer encoded = getCodec().encodeKey(key);
+        byte[] name = new byte[encoded.remaining()];
+        encoded.get(name);
+        int slot = SlotHash.getSlot(name);
+        String suffix = ":tmp:" + IdUtil.fastSimpleUUID();
+        // 已有 {hash tag} 时追加后缀不改变槽位，否则用 {key} 作为 hash tag
+        byte[] temp = concat(name, suffix);
+        if (SlotHash.getSlot(temp) != slot) {
+            byte[] tagged = new byte[name.length + 1];
+            tagged[0] = '{';
+            System.arraycopy(name, 0, tagged, 1, name.length);
+            temp = concat(tagged, "}" + suffix);
+        }
+        // 键中有不成对的 } 时 {key} 不能作为 hash tag，改变后缀直到槽位相同
+        for (int i = 0; SlotHash.getSlot(temp) != slot; i++) {
+            temp = concat(name, suffix + ":" + i);
+        }
+        return getCodec().decodeKey(ByteBuffer.wrap(temp));
+    }
+
+    private static byte[] concat(byte[] bytes, String suffix) {
+        byte[] tail = suffix.getBytes(StandardCharsets.UTF_8);
+        byte[] result = Arrays.copyOf(bytes, bytes.length + tail.length);
+        System.arraycopy(tail, 0, result, bytes.length, tail.length);
+        return result;
+    }
+
+    /**
+     * 创建流的消费组引擎，调用 build() 后开始消费，见 {@link StreamConsumer}
+     * <p>
+     * 读取线程会一直占用一个 withConnection 独占连接
+     * </p>
      *
-     * @param key 键
-     * @return 值
+     * @param stream   流的键
+     * @param group    消费组，不存在时自动创建
+     * @param consumer 消费者名称，同一消费组内每个进程应不同
+     * @param handler  消息处理器，会被多个工作线程同时调用，正常返回表示处理成功
+     * @return 构建器
      */
-    public V get(K key) {
-        return getCommands().get(key);
+    public StreamConsumer.Builder<K, V> streamConsumer(K stream, K group, K consumer, Consumer<StreamMessage<K, V>> handler) {
+        return new StreamConsumer.Builder<>(this, stream, group, consumer, handler);
     }
 
     /**
-     * 扫描key
+     * 创建异步写缓冲，调用 build() 后开始定时刷新，见 {@link WriteBehindBuffer}
+     * <p>
+     * 刷新通过 pipeline 写出，与其他 pipeline 调用共用批量执行专用连接
+     * </p>
      *
-     * @param match   可以使用*匹配
-     * @param limit   限制每批读取多少条，建议500
-     * @param handler 处理器
+     * @return 构建器
      */
-    public void scan(K match, int limit, Consumer<K> handler) {
-        T commands = getCommands();
-        KeyScanCursor<K> scanCursor = null;
-        ScanArgs scanArgs = new ScanArgs().match(match.toString()).limit(limit);
-        do {
-            scanCursor = (scanCursor == null) ? commands.scan(scanArgs) : commands.scan(scanCursor, scanArgs);
-            for (K key : scanCursor.getKeys()) {
-                handler.accept(key);
-            }
-        } while (!scanCursor.isFinished());
+    public WriteBehindBuffer.Builder<K, V> writeBehind() {
+        return new WriteBehindBuffer.Builder<>(this);
     }
 
     /**
-     * 获取指定经纬度距离最近的一个成员
+     * 批量添加流消息，所有 XADD 在批量执行专用连接上一次性发送
      *
-     * @param key 键
-     * @param lon 经度
-     * @param lat 纬度
-     * @param m   距离(米)
-     * @return 成员
+     * @param key    流的键
+     * @param bodies 消息内容
+     * @param maxlen 近似裁剪到的最大长度（MAXLEN ~），小于等于0表示不裁剪
+     * @return 消息 ID，与 bodies 顺序一致
      */
-    public V georadiusWithCountOne(K key, double lon, double lat, double m) {
-        // GEORADIUS places {longitude} {latitude} {radius} m COUNT 1 ASC
-        GeoArgs args = new GeoArgs()
-                .asc() // 按距离升序排列
-                .withCount(1); // 只返回最近的1个结果
-        List<GeoWithin<V>> results;
-        T commands = getCommands();
-        results = commands.georadius(
-                key, // key
-                lon, // 经度
-                lat, // 纬度
-                m, // 距离
-                GeoArgs.Unit.m, // 单位（米）
-                args // 参数配置
-        );
-        if (CollUtil.isNotEmpty(results)) {
-            return results.get(0).getMember();
+    public List<String> xaddBatch(K key, List<Map<K, V>> bodies, long maxlen) {
+        XAddArgs args = new XAddArgs();
+        if (maxlen > 0) {
+            args.maxlen(maxlen).approximateTrimming(true);
         }
-        return null;
+        List<Object> results = pipeline(p -> {
+            for (Map<K, V> body : bodies) {
+                p.command(a -> a.xadd(key, args, body));
+            }
+        });
+        List<String> ids = new ArrayList<>(results.size());
+        for (Object id : results) {
+            ids.add((String) id);
+        }
+        return ids;
     }
 
     /**
@@ -132,6 +1224,92 @@ public abstract class AbstractRedisOperations<K, V, T extends
         commands.geoadd(key, lon, lat, member);
     }
 
+    /**
+     * 批量添加经纬度
+     *
+     * @param key     键
+     * @param lons    经度
+     * @param lats    纬度
+     * @param members 地址信息，与 lons、lats 一一对应
+     * @return 新增的成员数量
+     */
+    public long geoadd(K key, double[] lons, double[] lats, List<V> members) {
+        return geoadd(key, lons, lats, members, DEFAULT_GEOADD_CHUNK_SIZE);
+    }
+
+    /**
+     * 批量添加经纬度
+     * <p>
+     * 每 chunkSize 个成员合并成一个 GEOADD 命令，所有命令通过 pipeline 一次性发送
+     * </p>
+     *
+     * @param key       键
+     * @param lons      经度
+     * @param lats      纬度
+     * @param members   地址信息，与 lons、lats 一一对应
+     * @param chunkSize 每个 GEOADD 命令最多包含的成员数量
+     * @return 新增的成员数量
+     */
+    public long geoadd(K key, double[] lons, double[] lats, List<V> members, int chunkSize) {
+        int size = members.size();
+        if (lons.length != size || lats.length != size) {
+            throw new IllegalArgumentException("经度、纬度、成员数量不一致");
+        }
+        int step = Math.max(1, chunkSize);
+        long added = 0;
+        for (Object result : pipeline(p -> {
+            for (int from = 0; from < size; from += step) {
+                // GEOADD places lon1 lat1 member1 lon2 lat2 member2 ...
+                int to = Math.min(from + step, size);
+                Object[] lngLatMember = new Object[(to - from) * 3];
+                for (int i = from, j = 0; i < to; i++) {
+                    lngLatMember[j++] = lons[i];
+                    lngLatMember[j++] = lats[i];
+                    lngLatMember[j++] = members.get(i);
+                }
+                p.command(c -> c.geoadd(key, lngLatMember));
+            }
+        })) {
+            added += (Long) result;
+        }
+        return added;
+    }
+
+    /**
+     * 批量获取指定经纬度距离最近的一个成员
+     * <p>
+     * 每个坐标一个 GEORADIUS 命令，所有命令通过 pipeline 一次性发送
+     * </p>
+     *
+     * @param key  键
+     * @param lons 经度
+     * @param lats 纬度，与 lons 一一对应
+     * @param m    距离(米)
+     * @return 成员，与坐标一一对应，范围内没有成员时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> georadiusWithCountOne(K key, double[] lons, double[] lats, double m) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("经度、纬度数量不一致");
+        }
+        GeoArgs args = new GeoArgs()
+                .asc() // 按距离升序排列
+                .withCount(1); // 只返回最近的1个结果
+        List<Object> results = pipeline(p -> {
+            for (int i = 0; i < lons.length; i++) {
+                double lon = lons[i];
+                double lat = lats[i];
+                p.command(c -> c.georadius(key, lon, lat, m, GeoArgs.Unit.m, args));
+            }
+        });
+        Object[] members = new Object[results.size()];
+        for (int i = 0; i < members.length; i++) {
+            List<GeoWithin<V>> within = (List<GeoWithin<V>>) results.get(i);
+            members[i] = CollUtil.isNotEmpty(within) ? within.get(0).getMember() : null;
+        }
+        return Arrays.asList((V[]) members);
+    }
+
     /**
      * 获取多个键对应的值
      * <p>
@@ -146,16 +1324,524 @@ public abstract class AbstractRedisOperations<K, V, T extends
      * @return 键值对
      */
     public Map<K, V> mget(K... keys) {
+        if (getNearCache() != null) {
+            return mgetMap(Arrays.asList(keys));
+        }
         T commands = getCommands();
-        Map<K, V> results = new HashMap<>();
+        Map<K, V> results = MapUtil.newHashMap(keys.length);
         for (KeyValue<K, V> kv : commands.mget(keys)) {
             if (kv != null && kv.hasValue() && kv.getValue() != null) {
                 results.put(kv.getKey(), kv.getValue());
             } else {
                 results.put(kv.getKey(), null);
             }
+            sample(kv.getKey(), results.get(kv.getKey()));
+        }
+        return results;
+    }
+
+    /**
+     * 批量获取值，按输入键的顺序返回
+     * <p>
+     * 键被拆分成多组（单机按数量拆分，集群先按节点、再按槽位分组后按数量拆分），每组一个 MGET 命令，
+     * 所有命令在普通连接上同时发出后再统一等待结果，避免逐组阻塞。
+     * </p>
+     *
+     * @param keys 键
+     * @return 值列表，与 keys 一一对应，不存在的键对应 null
+     */
+    public List<V> mgetValues(List<K> keys) {
+        return mgetValues(keys, getMgetChunkSize());
+    }
+
+    /**
+     * 批量获取值，按输入键的顺序返回
+     *
+     * @param keys      键
+     * @param chunkSize 每个 MGET 命令最多包含的键数量
+     * @return 值列表，与 keys 一一对应，不存在的键对应 null
+     */
+    public List<V> mgetValues(List<K> keys, int chunkSize) {
+        return join(mgetValuesAsync(keys, chunkSize));
+    }
+
+    /**
+     * 异步批量获取值，按输入键的顺序返回
+     *
+     * @param keys      键
+     * @param chunkSize 每个 MGET 命令最多包含的键数量
+     * @return 值列表，与 keys 一一对应，不存在的键对应 null
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<V>> mgetValuesAsync(List<K> keys, int chunkSize) {
+        NearCache<K, V> nearCache = getNearCache();
+        if (nearCache == null) {
+            return fetchValuesAsync(keys, chunkSize, null);
+        }
+        // 先从近端缓存取值，只向 Redis 请求未命中的键
+        Object[] values = new Object[keys.size()];
+        List<K> missKeys = new ArrayList<>();
+        int[] missIndexes = new int[keys.size()];
+        Object[] tokens = new Object[keys.size()];
+        boolean loading = false;
+        for (int i = 0; i < keys.size(); i++) {
+            K key = keys.get(i);
+            if (nearCache.accept(key)) {
+                V value = nearCache.get(key);
+                if (value != null) {
+                    values[i] = value;
+                    continue;
+                }
+                tokens[missKeys.size()] = nearCache.beginLoad(key);
+                loading = true;
+            }
+            missIndexes[missKeys.size()] = i;
+            missKeys.add(key);
+        }
+        // 有键要写入近端缓存时从主节点读取，失效通知只来自主节点
+        return fetchValuesAsync(missKeys, chunkSize, loading ? ReadFrom.UPSTREAM : null).handle((fetched, e) -> {
+            for (int m = 0; m < missKeys.size(); m++) {
+                if (tokens[m] != null) {
+                    nearCache.completeLoad(missKeys.get(m), tokens[m], fetched == null ? null : fetched.get(m));
+                }
+            }
+            if (e != null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            for (int m = 0; m < missKeys.size(); m++) {
+                values[missIndexes[m]] = fetched.get(m);
+            }
+            return Arrays.asList((V[]) values);
+        });
+    }
+
+    /**
+     * 从 Redis 批量获取值，所有分组的 MGET 同时发出
+     * <p>
+     * 使用自动发送的普通连接，不占用批量执行专用连接的锁，多个线程的批量读取互不等待；
+     * 集群的分组按节点相邻排列，同一节点的 MGET 连续写入该节点的连接
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<List<V>> fetchValuesAsync(List<K> keys, int chunkSize, ReadFrom readFrom) {
+        Object[] values = new Object[keys.size()];
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(Arrays.asList((V[]) values));
+        }
+        A async = readFrom == null ? getAsyncCommands() : getAsyncCommands(readFrom);
+        List<int[]> groups = groupForMget(keys, Math.max(1, chunkSize));
+        CompletableFuture<?>[] futures = new CompletableFuture[groups.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            int[] indexes = groups.get(g);
+            K[] chunk = (K[]) new Object[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                chunk[i] = keys.get(indexes[i]);
+            }
+            futures[g] = async.mget(chunk).toCompletableFuture().thenAccept(kvs -> {
+                // MGET 的结果与 chunk 顺序一致，各组写入的下标互不重叠
+                for (int i = 0; i < indexes.length; i++) {
+                    values[indexes[i]] = kvs.get(i).getValueOrElse(null);
+                    sample(chunk[i], (V) values[indexes[i]]);
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> Arrays.asList((V[]) values));
+    }
+
+    /**
+     * 批量获取值，返回预先分配好容量的映射
+     *
+     * @param keys 键
+     * @return 键值对，不存在的键对应 null
+     */
+    public Map<K, V> mgetMap(List<K> keys) {
+        return mgetMap(keys, getMgetChunkSize());
+    }
+
+    /**
+     * 批量获取值，返回预先分配好容量的映射
+     *
+     * @param keys      键
+     * @param chunkSize 每个 MGET 命令最多包含的键数量
+     * @return 键值对，不存在的键对应 null
+     */
+    public Map<K, V> mgetMap(List<K> keys, int chunkSize) {
+        List<V> values = mgetValues(keys, chunkSize);
+        Map<K, V> results = MapUtil.newHashMap(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            results.put(keys.get(i), values.get(i));
         }
         return results;
     }
 
+    /**
+     * 批量读取多个哈希键的相同字段，返回列式数据
+     * <p>
+     * 键按槽位分组后在批量执行专用连接上一次发送全部 HMGET，字段值由流式输出直接写入各列的数组，
+     * 不为每个键创建 List 或 Map
+     * </p>
+     *
+     * @param keys   键
+     * @param fields 字段，为空时不发送命令，返回没有列的结果
+     * @return 每个字段一列，不存在的键或字段对应 null
+     */
+    @SafeVarargs
+    public final HashColumns<K, V> hmgetColumns(List<K> keys, K... fields) {
+        HashColumns<K, V> columns = new HashColumns<>(keys, Arrays.asList(fields));
+        if (fields.length == 0) {
+            return columns;
+        }
+        pipeline(p -> {
+            for (int[] group : groupForMget(keys, getMgetChunkSize())) {
+                for (int row : group) {
+                    KeyValueStreamingChannel<K, V> channel = (field, value) -> columns.set(row, columns.indexOf(field), value);
+                    p.command(c -> c.hmget(channel, keys.get(row), fields));
+                }
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * 批量读取多个哈希键的全部字段，返回列式数据
+     * <p>
+     * 与 hmgetColumns 相同的发送方式，列为所有键出现过的字段的并集，按首次出现的顺序排列
+     * </p>
+     *
+     * @param keys 键
+     * @return 每个字段一列，键没有该字段时对应 null
+     */
+    public HashColumns<K, V> hgetallColumns(List<K> keys) {
+        HashColumns<K, V> columns = new HashColumns<>(keys, Collections.emptyList());
+        pipeline(p -> {
+            for (int[] group : groupForMget(keys, getMgetChunkSize())) {
+                for (int row : group) {
+                    KeyValueStreamingChannel<K, V> channel = (field, value) -> columns.put(row, field, value);
+                    p.command(c -> c.hgetall(channel, keys.get(row)));
+                }
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * 批量写入多个哈希键，每个键一个 HSET
+     * <p>
+     * 键按槽位分组后在批量执行专用连接上一次发送，命令参数直接由各列拼接，值为 null 的字段不写入，
+     * 所有字段都为 null 的键不发送
+     * </p>
+     *
+     * @param columns 列式数据
+     * @return 新增的字段数量
+     */
+    public long hsetColumns(HashColumns<K, V> columns) {
+        List<K> keys = columns.getKeys();
+        List<K> fields = columns.getFields();
+        RedisCodec<K, V> codec = getCodec();
+        List<Object> results = pipeline(p -> {
+            for (int[] group : groupForMget(keys, getMgetChunkSize())) {
+                for (int row : group) {
+                    CommandArgs<K, V> args = new CommandArgs<>(codec).addKey(keys.get(row));
+                    int count = 0;
+                    for (int f = 0; f < fields.size(); f++) {
+                        V value = columns.get(row, f);
+                        if (value != null) {
+                            args.addKey(fields.get(f)).addValue(value);
+                            count++;
+                        }
+                    }
+                    if (count > 0) {
+                        p.command(c -> c.dispatch(CommandType.HSET, new IntegerOutput<>(codec), args));
+                    }
+                }
+            }
+        });
+        long added = 0;
+        for (Object result : results) {
+            added += (Long) result;
+        }
+        return added;
+    }
+
+    /**
+     * 将键拆分成多组，每组发送一个 MGET 命令
+     * <p>
+     * 默认按顺序每 chunkSize 个键一组，集群实现需保证同一组内的键属于同一个槽位
+     * </p>
+     *
+     * @param keys      键
+     * @param chunkSize 每组最多包含的键数量
+     * @return 每组键在 keys 中的下标
+     */
+    protected List<int[]> groupForMget(List<K> keys, int chunkSize) {
+        int size = keys.size();
+        List<int[]> groups = new ArrayList<>(size / chunkSize + 1);
+        for (int from = 0; from < size; from += chunkSize) {
+            int[] indexes = new int[Math.min(chunkSize, size - from)];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = from + i;
+            }
+            groups.add(indexes);
+        }
+        return groups;
+    }
+
+    /**
+     * 注册 Lua 脚本
+     * <p>
+     * 同一脚本只注册一次，返回的对象可以保存为常量；之后用 eval/evalAsync 执行时只发送 SHA1 摘要（EVALSHA），
+     * 服务端没有该脚本（NOSCRIPT，例如重启或故障转移后）时自动 SCRIPT LOAD 后重试。
+     * 集群会在连接建立后和拓扑变化后把已注册的脚本加载到所有主节点。
+     * </p>
+     *
+     * @param source 脚本内容
+     * @return 脚本
+     */
+    public LuaScript script(String source) {
+        LuaScript script = new LuaScript(source);
+        LuaScript existing = scripts.putIfAbsent(script.getSha(), script);
+        if (existing != null) {
+            return existing;
+        }
+        if (isConnected()) {
+            preloadScript(script);
+        }
+        return script;
+    }
+
+    /**
+     * 获取已注册的脚本
+     *
+     * @return 脚本
+     */
+    protected Collection<LuaScript> getScripts() {
+        return scripts.values();
+    }
+
+    /**
+     * 预加载脚本，在注册时（已连接）调用，默认不预加载，首次执行遇到 NOSCRIPT 时再加载
+     *
+     * @param script 脚本
+     */
+    protected void preloadScript(LuaScript script) {
+    }
+
+    /**
+     * 把脚本加载到服务端，集群实现加载到所有主节点
+     *
+     * @param script 脚本
+     * @return 加载结果
+     */
+    protected CompletableFuture<?> loadScript(LuaScript script) {
+        return getAsyncCommands().scriptLoad(script.getSource()).toCompletableFuture();
+    }
+
+    /**
+     * 执行已注册的脚本
+     *
+     * @param script 脚本
+     * @param type   返回值类型
+     * @param keys   键，集群按第一个键路由，所有键需要在同一个槽位
+     * @param values 参数
+     * @param <R>    返回值类型
+     * @return 脚本返回值
+     */
+    @SafeVarargs
+    public final <R> R eval(LuaScript script, ScriptOutputType type, K[] keys, V... values) {
+        T commands = getCommands();
+        try {
+            return commands.evalsha(script.getSha(), type, keys, values);
+        } catch (RedisNoScriptException e) {
+            join(loadScript(script));
+            return commands.evalsha(script.getSha(), type, keys, values);
+        }
+    }
+
+    /**
+     * 异步执行已注册的脚本，多个调用可以同时在途
+     *
+     * @param script 脚本
+     * @param type   返回值类型
+     * @param keys   键，集群按第一个键路由，所有键需要在同一个槽位
+     * @param values 参数
+     * @param <R>    返回值类型
+     * @return 脚本返回值
+     */
+    @SafeVarargs
+    public final <R> CompletableFuture<R> evalAsync(LuaScript script, ScriptOutputType type, K[] keys, V... values) {
+        A async = getAsyncCommands();
+        return async.<R>evalsha(script.getSha(), type, keys, values).toCompletableFuture().handle((result, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RedisNoScriptException) {
+                return loadScript(script).thenCompose(v -> async.<R>evalsha(script.getSha(), type, keys, values));
+            }
+            CompletableFuture<R> failed = new CompletableFuture<>();
+            failed.completeExceptionally(cause);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * 批量执行命令
+     * <p>
+     * 在专用连接上排队 commands 中添加的所有命令，然后一次性发送，最后等待全部结果返回，
+     * 多个命令只需要一次网络往返。排队阶段持有锁，等待结果阶段不持有锁，多个线程可以同时等待各自的结果。
+     * </p>
+     *
+     * <pre>
+     *     List&lt;Object&gt; results = redisUtil.pipeline(p -&gt; {
+     *         p.set("k1", "v1");
+     *         p.expire("k1", 60);
+     *         p.get("k2");
+     *     });
+     * </pre>
+     *
+     * <p>
+     * commands 中不能等待自己添加的命令的结果（RedisFuture.get、join 等），命令在 commands 返回后才发送，
+     * 在其中等待会一直阻塞到命令超时，并且期间其它线程的 pipeline 都在等待排队锁
+     * </p>
+     *
+     * @param commands 添加命令，每个命令方法都会返回对应的 RedisFuture
+     * @return 各命令的结果，与添加顺序一致，任意命令失败时抛出该命令的异常
+     */
+    public List<Object> pipeline(Consumer<Pipeline> commands) {
+        Pipeline pipeline;
+        pipelineLock.lock();
+        try {
+            pipeline = new Pipeline(getPipelineCommands());
+            try {
+                commands.accept(pipeline);
+            } finally {
+                // 即使添加命令时出错，已排队的命令也要发出，避免混入下一批
+                pipeline.commands.flushCommands();
+            }
+        } finally {
+            pipelineLock.unlock();
+        }
+        return pipeline.await();
+    }
+
+    /**
+     * 持有批量执行的排队锁执行，用于在两批命令之间调整批量执行专用连接，例如拓扑变化后重新预热
+     *
+     * @param action 操作
+     */
+    protected void lockPipeline(Runnable action) {
+        pipelineLock.lock();
+        try {
+            action.run();
+        } finally {
+            pipelineLock.unlock();
+        }
+    }
+
+    /**
+     * 一批待发送的命令
+     * <p>
+     * 通过 {@link #pipeline(Consumer)} 获取，每个命令方法立即返回 RedisFuture，命令在 pipeline 方法结束排队后统一发送。
+     * 未提供的命令可以通过 {@link #command(Function)} 添加。
+     * </p>
+     */
+    public class Pipeline {
+        private final A commands;
+        private final List<RedisFuture<?>> futures = new ArrayList<>();
+
+        private Pipeline(A commands) {
+            this.commands = commands;
+        }
+
+        /**
+         * 添加任意命令
+         *
+         * <pre>
+         *     p.command(c -&gt; c.zadd("rank", 1.0, "a"));
+         * </pre>
+         *
+         * @param command 使用异步命令对象发出一个命令
+         * @param <R>     结果类型
+         * @return 命令结果
+         */
+        public <R> RedisFuture<R> command(Function<A, RedisFuture<R>> command) {
+            RedisFuture<R> future = command.apply(commands);
+            futures.add(future);
+            return future;
+        }
+
+        public RedisFuture<V> get(K key) {
+            RedisFuture<V> future = command(c -> c.get(key));
+            if (getKeySampler() != null) {
+                future.thenAccept(value -> sample(key, value));
+            }
+            return future;
+        }
+
+        public RedisFuture<String> set(K key, V value) {
+            sample(key, value);
+            return command(c -> c.set(key, value));
+        }
+
+        public RedisFuture<String> setex(K key, long seconds, V value) {
+            sample(key, value);
+            return command(c -> c.setex(key, seconds, value));
+        }
+
+        public RedisFuture<Long> del(K... keys) {
+            return command(c -> c.del(keys));
+        }
+
+        public RedisFuture<Boolean> expire(K key, long seconds) {
+            return command(c -> c.expire(key, seconds));
+        }
+
+        public RedisFuture<Long> incr(K key) {
+            return command(c -> c.incr(key));
+        }
+
+        public RedisFuture<V> hget(K key, K field) {
+            RedisFuture<V> future = command(c -> c.hget(key, field));
+            if (getKeySampler() != null) {
+                future.thenAccept(value -> sample(key, value));
+            }
+            return future;
+        }
+
+        public RedisFuture<Boolean> hset(K key, K field, V value) {
+            sample(key, value);
+            return command(c -> c.hset(key, field, value));
+        }
+
+        public RedisFuture<Long> hset(K key, Map<K, V> map) {
+            return command(c -> c.hset(key, map));
+        }
+
+        public RedisFuture<Long> geoadd(K key, double lon, double lat, V member) {
+            return command(c -> c.geoadd(key, lon, lat, member));
+        }
+
+        /**
+         * 已添加的命令
+         *
+         * @return 各命令的 RedisFuture
+         */
+        public List<RedisFuture<?>> getFutures() {
+            return futures;
+        }
+
+        private List<Object> await() {
+            CompletableFuture<?>[] all = new CompletableFuture[futures.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = futures.get(i).toCompletableFuture();
+            }
+            join(CompletableFuture.allOf(all));
+            List<Object> results = new ArrayList<>(all.length);
+            for (CompletableFuture<?> future : all) {
+                results.add(future.join());
+            }
+            return results;
+        }
+    }
+
 }
\ No newline at end of file
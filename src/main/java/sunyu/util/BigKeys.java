@@ -0,0 +1,217 @@
+package sunyu.util;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 一个节点的大键分析结果
+ * <p>
+ * 由 {@code analyzeBigKeys} 生成：用 SCAN 遍历节点上的键，对每一页的键同时发出 TYPE 和 MEMORY USAGE，
+ * 再按类型发出 STRLEN、LLEN、HLEN、SCARD、ZCARD 或 XLEN 得到元素数量，只保留占用内存最大的 top 个键，
+ * 另外按类型汇总键数量和内存。MEMORY USAGE 对集合类型是抽样估计值。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class BigKeys {
+    private final String node;
+    private long scanned;
+    private long totalBytes;
+    private final Map<String, long[]> types = new TreeMap<>();
+    private final PriorityQueue<BigKey> top = new PriorityQueue<>(Comparator.comparingLong(BigKey::getBytes));
+    private final int limit;
+
+    private BigKeys(String node, int limit) {
+        this.node = node;
+        this.limit = limit;
+    }
+
+    /**
+     * 分析一个节点
+     *
+     * @param node     节点名称
+     * @param commands 节点的异步命令对象
+     * @param scanArgs 扫描参数
+     * @param top      保留的大键数量
+     * @param names    键转换成字符串
+     * @param <K>      Redis 键的类型
+     * @param <V>      Redis 值的类型
+     * @return 分析结果
+     */
+    static <K, V> BigKeys analyze(String node, RedisClusterAsyncCommands<K, V> commands, ScanArgs scanArgs, int top,
+                                  Function<K, String> names) {
+        BigKeys result = new BigKeys(node, top);
+        KeyScanCursor<K> cursor = null;
+        do {
+            cursor = AbstractRedisOperations.join((cursor == null ? commands.scan(scanArgs) : commands.scan(cursor, scanArgs))
+                    .toCompletableFuture());
+            List<K> keys = cursor.getKeys();
+            List<CompletableFuture<String>> typeFutures = new ArrayList<>(keys.size());
+            List<CompletableFuture<Long>> memoryFutures = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                typeFutures.add(commands.type(key).toCompletableFuture());
+                memoryFutures.add(commands.memoryUsage(key).toCompletableFuture());
+            }
+            List<CompletableFuture<Long>> lengthFutures = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                lengthFutures.add(length(commands, keys.get(i), AbstractRedisOperations.join(typeFutures.get(i))));
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                Long bytes = AbstractRedisOperations.join(memoryFutures.get(i));
+                Long length = AbstractRedisOperations.join(lengthFutures.get(i));
+                if (bytes != null) {
+                    // 扫描到之后被删除的键 MEMORY USAGE 返回 null
+                    result.add(new BigKey(names.apply(keys.get(i)), typeFutures.get(i).join(), bytes,
+                            length == null ? 0 : length));
+                }
+            }
+        } while (!cursor.isFinished());
+        return result;
+    }
+
+    private static <K, V> CompletableFuture<Long> length(RedisClusterAsyncCommands<K, V> commands, K key, String type) {
+        RedisFuture<Long> future;
+        switch (type) {
+            case "string":
+                future = commands.strlen(key);
+                break;
+            case "list":
+                future = commands.llen(key);
+                break;
+            case "hash":
+                future = commands.hlen(key);
+                break;
+            case "set":
+                future = commands.scard(key);
+                break;
+            case "zset":
+                future = commands.zcard(key);
+                break;
+            case "stream":
+                future = commands.xlen(key);
+                break;
+            default:
+                return CompletableFuture.completedFuture(0L);
+        }
+        return future.toCompletableFuture();
+    }
+
+    private void add(BigKey key) {
+        scanned++;
+        totalBytes += key.bytes;
+        long[] type = types.computeIfAbsent(key.type, k -> new long[2]);
+        type[0]++;
+        type[1] += key.bytes;
+        top.offer(key);
+        if (top.size() > limit) {
+            top.poll();
+        }
+    }
+
+    /**
+     * @return 节点，host:port
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return 扫描到的键数量
+     */
+    public long getScanned() {
+        return scanned;
+    }
+
+    /**
+     * @return 扫描到的键占用的内存(字节)
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return 各类型的键数量
+     */
+    public Map<String, Long> getTypeCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        types.forEach((type, v) -> counts.put(type, v[0]));
+        return counts;
+    }
+
+    /**
+     * @return 各类型的键占用的内存(字节)
+     */
+    public Map<String, Long> getTypeBytes() {
+        Map<String, Long> bytes = new TreeMap<>();
+        types.forEach((type, v) -> bytes.put(type, v[1]));
+        return bytes;
+    }
+
+    /**
+     * @return 占用内存最大的键，从大到小
+     */
+    public List<BigKey> getTop() {
+        List<BigKey> list = new ArrayList<>(top);
+        list.sort(Comparator.comparingLong(BigKey::getBytes).reversed());
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return node + " scanned=" + scanned + " bytes=" + totalBytes + " types=" + getTypeCounts() + " top=" + getTop();
+    }
+
+    /**
+     * 一个大键
+     */
+    public static class BigKey {
+        private final String key;
+        private final String type;
+        private final long bytes;
+        private final long length;
+
+        BigKey(String key, String type, long bytes, long length) {
+            this.key = key;
+            this.type = type;
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return 类型，string、list、hash、set、zset、stream
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return MEMORY USAGE 返回的内存(字节)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return 字符串的字节数或集合类型的元素数量
+         */
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return key + "(" + type + ", " + bytes + "B, " + length + ")";
+        }
+    }
+
+}
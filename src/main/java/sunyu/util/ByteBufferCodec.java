@@ -0,0 +1,51 @@
+package sunyu.util;
+
+import io.lettuce.core.codec.RedisCodec;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBuffer 编解码器
+ * <p>
+ * 键值都以 ByteBuffer 表示，不做字符集转换。编码时直接使用调用方的缓冲区（不复制，也不改变其 position），
+ * 解码时只从网络缓冲区复制一次到新的堆内缓冲区，适合 protobuf、已压缩数据等二进制内容。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class ByteBufferCodec implements RedisCodec<ByteBuffer, ByteBuffer> {
+
+    public static final ByteBufferCodec INSTANCE = new ByteBufferCodec();
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    @Override
+    public ByteBuffer decodeKey(ByteBuffer bytes) {
+        return copy(bytes);
+    }
+
+    @Override
+    public ByteBuffer decodeValue(ByteBuffer bytes) {
+        return copy(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(ByteBuffer key) {
+        return key == null ? EMPTY.duplicate() : key.duplicate();
+    }
+
+    @Override
+    public ByteBuffer encodeValue(ByteBuffer value) {
+        return value == null ? EMPTY.duplicate() : value.duplicate();
+    }
+
+    private static ByteBuffer copy(ByteBuffer source) {
+        ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+        copy.put(source);
+        // 转成 Buffer 调用，JDK 9 以上编译时不会链接到 Java 8 没有的 ByteBuffer.flip()
+        ((Buffer) copy).flip();
+        return copy;
+    }
+
+}
@@ -0,0 +1,280 @@
+package sunyu.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.protocol.CommandArgs;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 按节点的熔断和并发限制
+ * <p>
+ * 命令发出前按第一个键的槽位找到所属主节点（单机、主从只有一个节点）。节点已熔断或在途命令数已达上限时不发出，
+ * 立即以 RedisException 失败，调用线程不会堵在一个故障的节点上。同一节点连续 failureThreshold 个命令超时或连接失败后熔断
+ * openDuration 毫秒，之后放行一个试探命令，成功则恢复，失败则继续熔断。命令执行错误（例如 WRONGTYPE）说明节点正常，不计为失败。
+ * </p>
+ * <p>
+ * 集群中没有键的命令（PING、INFO 等）不经过熔断；按节点执行的 SCAN 等命令按所属节点熔断，dispatch 发出的命令按 CommandArgs 中的第一个键熔断。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class CircuitBreakers {
+    private static final Log log = LogFactory.get();
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int maxConcurrency;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Map<Method, KeyParameter> keyParameters = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 创建熔断器
+     *
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openDuration     熔断时间(毫秒)
+     * @param maxConcurrency   每个节点的最大在途命令数，0表示不限制
+     */
+    public CircuitBreakers(int failureThreshold, long openDuration, int maxConcurrency) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * 包装命令对象
+     *
+     * @param type   命令接口
+     * @param target 命令对象
+     * @param nodes  由命令的第一个键得到节点名称，没有键时传入 null，返回 null 的命令不经过熔断
+     * @param <C>    命令接口类型
+     * @return 包装后的命令对象
+     */
+    <C> C wrap(Class<C> type, C target, Function<Object, String> nodes) {
+        return CommandProxy.wrap(type, target, new CommandProxy.Listener() {
+            @Override
+            public Object started(Method method, Object[] args) {
+                String node = nodes.apply(firstKey(method, args));
+                if (node == null) {
+                    return null;
+                }
+                Breaker breaker = breakers.computeIfAbsent(node, Breaker::new);
+                return breaker.acquire() ? breaker.probe : breaker;
+            }
+
+            @Override
+            public void completed(Object context, Method method, Throwable error) {
+                if (context instanceof Breaker.Probe) {
+                    ((Breaker.Probe) context).breaker().release(error, true);
+                } else if (context != null) {
+                    ((Breaker) context).release(error, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * 参数中第一个类型为 K 或 K[] 的值，例如 get(K key)、hmget(channel, K key, K... fields)、del(K... keys)；
+     * 没有这样的参数时取 CommandArgs 中第一个编码后的键，例如 dispatch(type, output, args)
+     */
+    private Object firstKey(Method method, Object[] args) {
+        KeyParameter parameter = keyParameters.get(method);
+        if (parameter == null) {
+            parameter = keyParameters.computeIfAbsent(method, CircuitBreakers::keyParameter);
+        }
+        Object value = parameter == KeyParameter.NONE ? null : args[parameter.index];
+        if (value == null) {
+            return null;
+        }
+        switch (parameter.kind) {
+            case KEYS:
+                return Array.getLength(value) > 0 ? Array.get(value, 0) : null;
+            case ARGS:
+                ByteBuffer key = ((CommandArgs<?, ?>) value).getFirstEncodedKey();
+                return key == null ? null : key.duplicate();
+            default:
+                return value;
+        }
+    }
+
+    private static KeyParameter keyParameter(Method method) {
+        Type[] types = method.getGenericParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (isKey(types[i])) {
+                return new KeyParameter(KeyKind.KEY, i);
+            }
+            if (types[i] instanceof GenericArrayType && isKey(((GenericArrayType) types[i]).getGenericComponentType())) {
+                return new KeyParameter(KeyKind.KEYS, i);
+            }
+        }
+        Class<?>[] classes = method.getParameterTypes();
+        for (int i = 0; i < classes.length; i++) {
+            if (CommandArgs.class.isAssignableFrom(classes[i])) {
+                return new KeyParameter(KeyKind.ARGS, i);
+            }
+        }
+        return KeyParameter.NONE;
+    }
+
+    private static boolean isKey(Type type) {
+        return type instanceof TypeVariable && "K".equals(((TypeVariable<?>) type).getName());
+    }
+
+    private enum KeyKind {
+        KEY, KEYS, ARGS
+    }
+
+    /**
+     * 命令方法中键所在的参数
+     */
+    private static class KeyParameter {
+        static final KeyParameter NONE = new KeyParameter(KeyKind.KEY, -1);
+
+        final KeyKind kind;
+        final int index;
+
+        KeyParameter(KeyKind kind, int index) {
+            this.kind = kind;
+            this.index = index;
+        }
+    }
+
+    /**
+     * @return 当前熔断中的节点
+     */
+    public List<String> getOpenNodes() {
+        List<String> nodes = new ArrayList<>();
+        breakers.forEach((node, breaker) -> {
+            if (breaker.open) {
+                nodes.add(node);
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * @return 因熔断或并发限制而未发出的命令数量
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 一个节点的熔断状态
+     * <p>
+     * 熔断期间只有试探命令的结果能恢复或继续熔断，熔断前发出、熔断后才完成的命令只归还并发许可
+     * </p>
+     */
+    private class Breaker {
+        private final String node;
+        private final Semaphore permits;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private final Probe probe = new Probe();
+        private volatile boolean open;
+        private volatile long openedAt;
+
+        Breaker(String node) {
+            this.node = node;
+            this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        }
+
+        /**
+         * 申请发出一个命令
+         *
+         * @return 是否是熔断时间过后的试探命令
+         */
+        boolean acquire() {
+            boolean probe = false;
+            if (open) {
+                // 熔断时间过后只放行一个试探命令
+                if (System.nanoTime() - openedAt < openDuration || !probing.compareAndSet(false, true)) {
+                    rejected.increment();
+                    throw new RedisException("节点 " + node + " 已熔断");
+                }
+                probe = true;
+            }
+            if (permits != null && !permits.tryAcquire()) {
+                if (probe) {
+                    probing.set(false);
+                }
+                rejected.increment();
+                throw new RedisException("节点 " + node + " 在途命令数已达上限 " + maxConcurrency);
+            }
+            return probe;
+        }
+
+        /**
+         * 命令完成
+         *
+         * @param error 命令的异常，成功时为 null
+         * @param probe 是否是试探命令
+         */
+        void release(Throwable error, boolean probe) {
+            if (permits != null) {
+                permits.release();
+            }
+            boolean failure = isFailure(error);
+            if (probe) {
+                if (failure) {
+                    log.warn("节点 {} 试探失败，继续熔断 {}ms", node, TimeUnit.NANOSECONDS.toMillis(openDuration));
+                    openedAt = System.nanoTime();
+                } else {
+                    log.info("节点 {} 恢复", node);
+                    failures.set(0);
+                    open = false;
+                }
+                probing.set(false);
+            } else if (!open) {
+                if (!failure) {
+                    failures.set(0);
+                } else if (failures.incrementAndGet() >= failureThreshold) {
+                    synchronized (this) {
+                        if (!open) {
+                            log.warn("节点 {} 连续失败 {} 次，熔断 {}ms", node, failures.get(), TimeUnit.NANOSECONDS.toMillis(openDuration));
+                            openedAt = System.nanoTime();
+                            open = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 试探命令的上下文，完成时由它找到所属节点
+         */
+        private class Probe {
+            Breaker breaker() {
+                return Breaker.this;
+            }
+        }
+    }
+
+    private static boolean isFailure(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e != null && !(e instanceof RedisCommandExecutionException);
+    }
+
+}
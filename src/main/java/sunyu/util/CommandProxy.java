@@ -0,0 +1,111 @@
+package sunyu.util;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 命令对象的动态代理，在每个 Redis 命令发出和完成时回调
+ * <p>
+ * 同步命令在方法返回或抛出异常时完成，异步命令在返回的 RedisFuture 完成时完成；
+ * 连接管理类方法（getStatefulConnection、flushCommands、masters 等）直接调用，不回调。
+ * 发出前的回调抛出异常时不发出命令，同步命令直接抛出该异常，异步命令返回以该异常失败的 RedisFuture。
+ * </p>
+ * <p>
+ * 每个命令多一次反射调用，异步命令多注册一次完成回调，开销见 jmh 中的 ProxyBenchmark。
+ * 延迟不在这里计时，由 RedisMetrics 作为 CommandLatencyCollector 记录；
+ * 集群各节点的命令（扫描、节点命令）也逐个节点包装，只有加载脚本经 masters() 直接发出。
+ * </p>
+ *
+ * @author SunYu
+ */
+final class CommandProxy {
+    private static final Set<String> PASS_THROUGH = new HashSet<>(Arrays.asList(
+            "getStatefulConnection", "isOpen", "setTimeout", "reset", "setAutoFlushCommands", "flushCommands",
+            "masters", "replicas", "upstream", "nodes", "getConnection", "getConnectionAsync"));
+
+    private CommandProxy() {
+    }
+
+    interface Listener {
+        /**
+         * 命令发出前，抛出异常时不发出命令，也不再回调 completed
+         *
+         * @param method 命令方法
+         * @param args   命令参数
+         * @return 传给 completed 的上下文
+         */
+        Object started(Method method, Object[] args);
+
+        /**
+         * 命令完成
+         *
+         * @param context started 返回的上下文
+         * @param method  命令方法
+         * @param error   失败原因，成功时为 null
+         */
+        void completed(Object context, Method method, Throwable error);
+    }
+
+    /**
+     * 包装命令对象
+     *
+     * @param type     命令接口，例如 RedisCommands.class
+     * @param target   命令对象
+     * @param listener 回调
+     * @param <C>      命令接口类型
+     * @return 包装后的命令对象
+     */
+    static <C> C wrap(Class<C> type, C target, Listener listener) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> invoke(target, method, args, listener)));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args, Listener listener) throws Throwable {
+        if (method.getDeclaringClass() == Object.class || PASS_THROUGH.contains(method.getName())) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        Object context;
+        try {
+            context = listener.started(method, args);
+        } catch (RuntimeException e) {
+            if (RedisFuture.class.isAssignableFrom(method.getReturnType())) {
+                return failed(e);
+            }
+            throw e;
+        }
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            listener.completed(context, method, e.getCause());
+            throw e.getCause();
+        }
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, e) -> listener.completed(context, method, e));
+        } else {
+            listener.completed(context, method, null);
+        }
+        return result;
+    }
+
+    private static RedisFuture<Object> failed(Throwable e) {
+        AsyncCommand<Object, Object, Object> future = new AsyncCommand<>(new Command<>(CommandType.PING, null));
+        future.completeExceptionally(e);
+        return future;
+    }
+
+}
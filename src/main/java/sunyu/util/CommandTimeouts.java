@@ -0,0 +1,129 @@
+package sunyu.util;
+
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.protocol.RedisCommand;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 按命令类型的超时时间和调用范围内的截止时间
+ * <p>
+ * 作为 Lettuce 的超时来源，每个命令发出时按类型取读、写、扫描或阻塞命令的超时时间；
+ * 当前线程处于 {@link #withTimeout(long, Supplier)} 范围内时再取与剩余时间的较小值，剩余时间用完后发出的命令立即超时。
+ * 超时的命令以 RedisCommandTimeoutException 结束，同步调用不再等待，尚未写出的命令不再发送；
+ * 已经写出的命令要等到回复才从连接上移除，以保持回复的顺序。
+ * </p>
+ * <p>
+ * 阻塞命令（BLPOP、XREAD、XREADGROUP 等）的超时时间需大于命令自身的阻塞时间。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class CommandTimeouts extends TimeoutOptions.TimeoutSource {
+    private static final Set<String> BLOCKING = new HashSet<>(Arrays.asList(
+            "BLPOP", "BRPOP", "BRPOPLPUSH", "BZPOPMIN", "BZPOPMAX", "XREAD", "XREADGROUP", "WAIT"));
+    private static final Set<String> SCANS = new HashSet<>(Arrays.asList(
+            "SCAN", "HSCAN", "SSCAN", "ZSCAN", "KEYS"));
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+            "GET", "MGET", "GETRANGE", "GETBIT", "STRLEN", "BITCOUNT", "BITPOS", "EXISTS", "TYPE", "TTL", "PTTL", "DUMP",
+            "HGET", "HMGET", "HGETALL", "HKEYS", "HVALS", "HLEN", "HEXISTS", "HSTRLEN",
+            "LRANGE", "LLEN", "LINDEX", "LPOS",
+            "SMEMBERS", "SISMEMBER", "SCARD", "SRANDMEMBER", "SDIFF", "SINTER", "SUNION",
+            "ZRANGE", "ZRANGEBYSCORE", "ZRANGEBYLEX", "ZREVRANGE", "ZREVRANGEBYSCORE", "ZREVRANGEBYLEX",
+            "ZSCORE", "ZCARD", "ZCOUNT", "ZLEXCOUNT", "ZRANK", "ZREVRANK",
+            "GEOPOS", "GEODIST", "GEOHASH", "GEORADIUS", "GEORADIUS_RO", "GEORADIUSBYMEMBER", "GEORADIUSBYMEMBER_RO",
+            "PFCOUNT", "XRANGE", "XREVRANGE", "XLEN", "XPENDING", "XINFO",
+            "PING", "TIME", "INFO", "DBSIZE", "MEMORY"));
+
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final long scanTimeout;
+    private final long blockingTimeout;
+    private final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    /**
+     * 创建超时来源
+     *
+     * @param readTimeout     读命令超时(毫秒)
+     * @param writeTimeout    写命令和其它命令超时(毫秒)
+     * @param scanTimeout     SCAN 类命令超时(毫秒)
+     * @param blockingTimeout 阻塞命令超时(毫秒)
+     */
+    public CommandTimeouts(long readTimeout, long writeTimeout, long scanTimeout, long blockingTimeout) {
+        this.readTimeout = TimeUnit.MILLISECONDS.toNanos(readTimeout);
+        this.writeTimeout = TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+        this.scanTimeout = TimeUnit.MILLISECONDS.toNanos(scanTimeout);
+        this.blockingTimeout = TimeUnit.MILLISECONDS.toNanos(blockingTimeout);
+    }
+
+    @Override
+    public long getTimeout(RedisCommand<?, ?, ?> command) {
+        long timeout = getTimeout(command.getType().name());
+        Long end = deadline.get();
+        if (end != null) {
+            // 剩余时间用完时取最小值，命令发出后立即超时
+            timeout = Math.min(timeout, Math.max(1, end - System.nanoTime()));
+        }
+        return timeout;
+    }
+
+    private long getTimeout(String command) {
+        if (READS.contains(command)) {
+            return readTimeout;
+        }
+        if (SCANS.contains(command)) {
+            return scanTimeout;
+        }
+        if (BLOCKING.contains(command)) {
+            return blockingTimeout;
+        }
+        return writeTimeout;
+    }
+
+    @Override
+    public TimeUnit getTimeUnit() {
+        return TimeUnit.NANOSECONDS;
+    }
+
+    /**
+     * 在截止时间内执行操作，操作中发出的所有命令共用剩余时间
+     * <p>
+     * 可以嵌套，内层的截止时间不会晚于外层。截止时间只对当前线程发出的命令生效。
+     * </p>
+     *
+     * @param timeout 超时时间(毫秒)
+     * @param action  操作
+     * @param <R>     结果类型
+     * @return 操作结果
+     */
+    public <R> R withTimeout(long timeout, Supplier<R> action) {
+        Long previous = deadline.get();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (previous != null && previous - end < 0) {
+            end = previous;
+        }
+        deadline.set(end);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                deadline.remove();
+            } else {
+                deadline.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return 当前线程截止时间的剩余时间(毫秒)，不在截止时间范围内时为 -1
+     */
+    public long getRemaining() {
+        Long end = deadline.get();
+        return end == null ? -1 : Math.max(0, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()));
+    }
+
+}
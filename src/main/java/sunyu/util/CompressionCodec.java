@@ -0,0 +1,199 @@
+package sunyu.util;
+
+import io.lettuce.core.codec.RedisCodec;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 值压缩编解码器
+ * <p>
+ * 包装另一个编解码器，编码后的值达到阈值时使用 JDK 自带的 Deflate（BEST_SPEED）压缩，键不做处理。
+ * 压缩后的值以头部标记开头：1字节标记 0x00、1字节算法 0x01、4字节原始长度（大端），随后是 zlib 数据；
+ * 压缩后没有变小的值按原样保存。
+ * </p>
+ * <p>
+ * 解码时只有以上述头部开头、原始长度合理且随后是合法 zlib 头的值才会解压，解压失败或长度不符时按原样交给被包装的编解码器；
+ * 其余值（开启压缩前写入的旧值、低于阈值的值）也按原样交给被包装的编解码器。
+ * </p>
+ * <p>
+ * 文本（UTF-8 的 JSON 等）不会以 0x00 0x01 开头，因此旧的文本值可以与压缩值混存，可以在已有的文本数据上直接开启。
+ * 任意二进制值（ByteArrayCodec、{@link ByteBufferCodec}）有可能恰好以一个合法的头部和 zlib 数据开头而被误解压，
+ * 二进制数据只应在新的键上开启压缩，不要与开启前写入的旧值混存。
+ * </p>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class CompressionCodec<K, V> implements RedisCodec<K, V> {
+    /**
+     * 头部标记
+     */
+    static final byte MAGIC = 0x00;
+    /**
+     * 压缩算法：Deflate
+     */
+    static final byte DEFLATE = 0x01;
+    /**
+     * 头部长度：标记、算法、原始长度
+     */
+    static final int HEADER_LENGTH = 6;
+    /**
+     * Redis 字符串的最大长度，超过的原始长度一定不是压缩值
+     */
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final RedisCodec<K, V> delegate;
+    private final int threshold;
+
+    /**
+     * 创建压缩编解码器
+     *
+     * @param delegate  被包装的编解码器
+     * @param threshold 压缩阈值(字节)，编码后的值达到此长度才压缩
+     */
+    public CompressionCodec(RedisCodec<K, V> delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public K decodeKey(ByteBuffer bytes) {
+        return delegate.decodeKey(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(K key) {
+        return delegate.encodeKey(key);
+    }
+
+    @Override
+    public V decodeValue(ByteBuffer bytes) {
+        if (isCompressed(bytes)) {
+            ByteBuffer plain = decompress(bytes);
+            if (plain != null) {
+                return delegate.decodeValue(plain);
+            }
+        }
+        return delegate.decodeValue(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(V value) {
+        ByteBuffer bytes = delegate.encodeValue(value);
+        if (bytes.remaining() < threshold) {
+            return bytes;
+        }
+        return compress(bytes);
+    }
+
+    /**
+     * 是否像压缩后的值：头部标记和算法相符，原始长度大于保存的长度（压缩后没有变小的值不会保存为压缩格式），
+     * 随后是 zlib 头（压缩方法为 Deflate，头部校验能被31整除，没有预设字典）
+     *
+     * @param bytes 值
+     * @return 是否压缩
+     */
+    static boolean isCompressed(ByteBuffer bytes) {
+        int p = bytes.position();
+        if (bytes.remaining() < HEADER_LENGTH + 2 || bytes.get(p) != MAGIC || bytes.get(p + 1) != DEFLATE) {
+            return false;
+        }
+        int length = length(bytes, p);
+        if (length <= bytes.remaining() || length > MAX_LENGTH) {
+            return false;
+        }
+        int cmf = bytes.get(p + HEADER_LENGTH) & 0xFF;
+        int flg = bytes.get(p + HEADER_LENGTH + 1) & 0xFF;
+        return (cmf & 0x0F) == 8 && (cmf << 8 | flg) % 31 == 0 && (flg & 0x20) == 0;
+    }
+
+    private static int length(ByteBuffer bytes, int p) {
+        return ((bytes.get(p + 2) & 0xFF) << 24) | ((bytes.get(p + 3) & 0xFF) << 16)
+                | ((bytes.get(p + 4) & 0xFF) << 8) | (bytes.get(p + 5) & 0xFF);
+    }
+
+    /**
+     * 压缩，压缩后没有变小时返回原值
+     */
+    static ByteBuffer compress(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        byte[] input;
+        int offset;
+        if (bytes.hasArray()) {
+            input = bytes.array();
+            offset = bytes.arrayOffset() + bytes.position();
+        } else {
+            input = new byte[length];
+            bytes.duplicate().get(input);
+            offset = 0;
+        }
+        // 压缩后不变小就不压缩，输出缓冲区只需要原始长度
+        byte[] output = new byte[HEADER_LENGTH + length];
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        int size = HEADER_LENGTH;
+        while (!deflater.finished() && size < output.length) {
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        if (!deflater.finished() || size >= length) {
+            return bytes;
+        }
+        output[0] = MAGIC;
+        output[1] = DEFLATE;
+        output[2] = (byte) (length >>> 24);
+        output[3] = (byte) (length >>> 16);
+        output[4] = (byte) (length >>> 8);
+        output[5] = (byte) length;
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    /**
+     * 解压
+     *
+     * @return 解压后的值，数据不是完整的 zlib 数据或长度与头部不符时为 null
+     */
+    static ByteBuffer decompress(ByteBuffer bytes) {
+        int p = bytes.position();
+        int length = length(bytes, p);
+        byte[] input = new byte[bytes.remaining() - HEADER_LENGTH];
+        ByteBuffer source = bytes.duplicate();
+        // 转成 Buffer 调用，JDK 9 以上编译时不会链接到 Java 8 没有的 ByteBuffer.position(int)
+        ((Buffer) source).position(p + HEADER_LENGTH);
+        source.get(input);
+        byte[] output = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            int size = 0;
+            while (size < length && !inflater.finished()) {
+                int n = inflater.inflate(output, size, length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            // 输出正好填满时 zlib 尾部的校验和可能还没有读取，多解压一次确认数据到此结束
+            if (size == length && !inflater.finished() && inflater.inflate(new byte[1]) != 0) {
+                return null;
+            }
+            if (size != length || !inflater.finished() || inflater.getRemaining() != 0) {
+                return null;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+}
@@ -0,0 +1,85 @@
+package sunyu.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 多连接的选择器，按 {@link ConnectionStriping} 为每次调用选出一个连接下标
+ * <p>
+ * 只有一个连接时直接返回0；最少未完成策略需要用 {@link #track} 包装每个连接的命令对象来统计未完成命令数。
+ * </p>
+ *
+ * @author SunYu
+ */
+class ConnectionStripes {
+    private final ConnectionStriping striping;
+    private final int count;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicIntegerArray outstanding;
+
+    ConnectionStripes(int count, ConnectionStriping striping) {
+        this.count = count;
+        this.striping = striping;
+        this.outstanding = new AtomicIntegerArray(count);
+    }
+
+    /**
+     * 选择连接
+     *
+     * @return 连接下标
+     */
+    int next() {
+        if (count == 1) {
+            return 0;
+        }
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % count;
+        if (striping == ConnectionStriping.ROUND_ROBIN) {
+            return start;
+        }
+        // 从轮转位置开始找，未完成数相同时不会总落在第一个连接上
+        int best = start;
+        int min = outstanding.get(start);
+        for (int i = 1; i < count && min > 0; i++) {
+            int index = (start + i) % count;
+            int n = outstanding.get(index);
+            if (n < min) {
+                best = index;
+                min = n;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 包装指定连接的命令对象，最少未完成策略下统计该连接的未完成命令数，其它策略原样返回
+     *
+     * @param index  连接下标
+     * @param type   命令接口
+     * @param target 命令对象
+     * @param <C>    命令接口类型
+     * @return 命令对象
+     */
+    <C> C track(int index, Class<C> type, C target) {
+        if (count == 1 || striping != ConnectionStriping.LEAST_OUTSTANDING) {
+            return target;
+        }
+        return CommandProxy.wrap(type, target, new CommandProxy.Listener() {
+            @Override
+            public Object started(Method method, Object[] args) {
+                outstanding.incrementAndGet(index);
+                return null;
+            }
+
+            @Override
+            public void completed(Object context, Method method, Throwable error) {
+                outstanding.decrementAndGet(index);
+            }
+        });
+    }
+
+    int size() {
+        return count;
+    }
+
+}
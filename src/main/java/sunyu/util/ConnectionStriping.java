@@ -0,0 +1,17 @@
+package sunyu.util;
+
+/**
+ * 开启多连接时普通命令选择连接的策略
+ *
+ * @author SunYu
+ */
+public enum ConnectionStriping {
+    /**
+     * 依次轮流使用每个连接
+     */
+    ROUND_ROBIN,
+    /**
+     * 使用未完成命令最少的连接，连接上有大值传输或慢命令时其它调用会避开它
+     */
+    LEAST_OUTSTANDING
+}
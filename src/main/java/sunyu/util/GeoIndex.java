@@ -0,0 +1,357 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.sync.RedisScriptingCommands;
+import io.lettuce.core.api.sync.RedisSortedSetCommands;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 地理位置本地索引
+ * <p>
+ * 把一个 GEO 键（有序集合，分值为52位 geohash）整体加载到内存，用原始类型数组保存经纬度，
+ * 按 geohash 排序后通过二分查找定位网格，查找最近成员不再访问 Redis，适合行政区划等很少变化的数据。
+ * </p>
+ * <p>
+ * 经纬度由 geohash 解码得到，与 GEOPOS 返回值一致，距离使用与 Redis 相同的半正矢公式，
+ * 因此 {@link #nearest(double, double, double)} 的结果与 georadiusWithCountOne 一致。
+ * </p>
+ * <p>
+ * 后台线程按间隔检查键的摘要，发生变化时重新加载，加载完成后原子替换快照。摘要由 Lua 脚本在服务端
+ * 按页读取全部成员和分值后计算 SHA1，任何成员的增删和移动都会改变摘要，成员按字节比较，与编解码器无关；
+ * 每次检查在服务端遍历整个键，检查间隔不宜过短。
+ * </p>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class GeoIndex<K, V> implements AutoCloseable {
+    private static final double EARTH_RADIUS_IN_METERS = 6372797.560856;
+    private static final double LAT_MIN = -85.05112878;
+    private static final double LAT_MAX = 85.05112878;
+    private static final double LON_MIN = -180;
+    private static final double LON_MAX = 180;
+    private static final int STEP = 26;
+    /**
+     * 每次 ZRANGE 读取的成员数量
+     */
+    private static final int PAGE_SIZE = 10000;
+    /**
+     * 按页把成员（带长度前缀）和分值串接后链式计算 SHA1，内存占用只与页大小有关
+     */
+    private static final LuaScript DIGEST = new LuaScript(
+            "local digest = ''\n" +
+            "local n = redis.call('ZCARD', KEYS[1])\n" +
+            "for i = 0, n - 1, 1000 do\n" +
+            "  local page = redis.call('ZRANGE', KEYS[1], i, i + 999, 'WITHSCORES')\n" +
+            "  local parts = {digest}\n" +
+            "  for j = 1, #page do\n" +
+            "    parts[#parts + 1] = #page[j] .. ':' .. page[j]\n" +
+            "  end\n" +
+            "  digest = redis.sha1hex(table.concat(parts))\n" +
+            "end\n" +
+            "return redis.status_reply(n .. ':' .. digest)");
+
+    private final Log log = LogFactory.get();
+    private final RedisSortedSetCommands<K, V> commands;
+    private final RedisScriptingCommands<K, V> scripting;
+    private final K key;
+    private final ScheduledExecutorService scheduler;
+    private volatile Snapshot snapshot;
+
+    /**
+     * 创建并立即加载索引
+     *
+     * @param commands        命令对象，需要同时支持有序集合和脚本命令
+     * @param key             GEO 键
+     * @param refreshInterval 检查变化的间隔(秒)，小于等于0表示不自动检查
+     * @param <C>             命令对象类型
+     */
+    public <C extends RedisSortedSetCommands<K, V> & RedisScriptingCommands<K, V>> GeoIndex(C commands, K key, long refreshInterval) {
+        this.commands = commands;
+        this.scripting = commands;
+        this.key = key;
+        reload();
+        if (refreshInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("redis-geo-index-", true));
+            scheduler.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 获取指定经纬度距离最近的一个成员
+     *
+     * @param lon 经度
+     * @param lat 纬度
+     * @param m   距离(米)
+     * @return 成员，范围内没有成员时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public V nearest(double lon, double lat, double m) {
+        Snapshot s = snapshot;
+        if (s.scores.length == 0) {
+            return null;
+        }
+        // 半径覆盖的经纬度范围
+        double angle = m / EARTH_RADIUS_IN_METERS;
+        double latDelta = Math.toDegrees(angle) * 1.001;
+        double cosLat = Math.cos(Math.toRadians(Math.min(Math.abs(lat), 90)));
+        double lonDelta = Math.sin(angle) < cosLat
+                ? Math.toDegrees(Math.asin(Math.sin(angle) / cosLat)) * 1.001 : 180;
+        // 选择能用 2x2 个网格覆盖范围的最细精度
+        int step = STEP;
+        while (step > 0 && (cellSize(LAT_MAX - LAT_MIN, step) < 2 * latDelta || cellSize(LON_MAX - LON_MIN, step) < 2 * lonDelta)) {
+            step--;
+        }
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        if (step == 0) {
+            for (int i = 0; i < s.scores.length; i++) {
+                double distance = distance(lon, lat, s.lons[i], s.lats[i]);
+                if (distance <= m && distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+        } else {
+            long latFrom = cell(lat - latDelta, LAT_MIN, LAT_MAX, step);
+            long latTo = cell(lat + latDelta, LAT_MIN, LAT_MAX, step);
+            // 经度可能跨越 ±180，拆成两段
+            double[][] lonRanges;
+            if (lon - lonDelta < LON_MIN) {
+                lonRanges = new double[][]{{LON_MIN, lon + lonDelta}, {lon - lonDelta + 360, LON_MAX}};
+            } else if (lon + lonDelta > LON_MAX) {
+                lonRanges = new double[][]{{lon - lonDelta, LON_MAX}, {LON_MIN, lon + lonDelta - 360}};
+            } else {
+                lonRanges = new double[][]{{lon - lonDelta, lon + lonDelta}};
+            }
+            int shift = (STEP - step) * 2;
+            for (long ilat = latFrom; ilat <= latTo; ilat++) {
+                for (double[] lonRange : lonRanges) {
+                    long lonFrom = cell(lonRange[0], LON_MIN, LON_MAX, step);
+                    long lonTo = cell(lonRange[1], LON_MIN, LON_MAX, step);
+                    for (long ilon = lonFrom; ilon <= lonTo; ilon++) {
+                        long hash = interleave(ilat, ilon);
+                        long max = (hash + 1) << shift;
+                        for (int i = lowerBound(s.scores, hash << shift); i < s.scores.length && s.scores[i] < max; i++) {
+                            double distance = distance(lon, lat, s.lons[i], s.lats[i]);
+                            if (distance <= m && distance < bestDistance) {
+                                best = i;
+                                bestDistance = distance;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best < 0 ? null : (V) s.members[best];
+    }
+
+    /**
+     * 批量获取指定经纬度距离最近的一个成员
+     *
+     * @param lons 经度
+     * @param lats 纬度，与 lons 一一对应
+     * @param m    距离(米)
+     * @return 成员，与坐标一一对应，范围内没有成员时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> nearest(double[] lons, double[] lats, double m) {
+        Object[] members = new Object[lons.length];
+        for (int i = 0; i < lons.length; i++) {
+            members[i] = nearest(lons[i], lats[i], m);
+        }
+        return Arrays.asList((V[]) members);
+    }
+
+    /**
+     * 成员数量
+     *
+     * @return 成员数量
+     */
+    public int size() {
+        return snapshot.scores.length;
+    }
+
+    /**
+     * 重新加载
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        // 先取摘要再加载，加载期间的修改会在下一次检查时发现
+        String digest = digest();
+        int count = commands.zcard(key).intValue();
+        long[] scores = new long[count];
+        double[] lons = new double[count];
+        double[] lats = new double[count];
+        Object[] members = new Object[count];
+        int n = 0;
+        while (n < count) {
+            List<ScoredValue<V>> page = commands.zrangeWithScores(key, n, n + PAGE_SIZE - 1);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (ScoredValue<V> scoredValue : page) {
+                if (n == count) {
+                    break;
+                }
+                long bits = (long) scoredValue.getScore();
+                scores[n] = bits;
+                lats[n] = decode(squash(bits), LAT_MIN, LAT_MAX);
+                lons[n] = decode(squash(bits >>> 1), LON_MIN, LON_MAX);
+                members[n] = scoredValue.getValue();
+                n++;
+            }
+        }
+        if (n < count) {
+            // 加载期间成员减少
+            scores = Arrays.copyOf(scores, n);
+            lons = Arrays.copyOf(lons, n);
+            lats = Arrays.copyOf(lats, n);
+            members = Arrays.copyOf(members, n);
+        }
+        snapshot = new Snapshot(scores, lons, lats, members, digest);
+        log.info("加载地理位置索引 {} 成员 {} 耗时 {} ms", key, n, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 停止后台检查
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void refresh() {
+        try {
+            if (!digest().equals(snapshot.digest)) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.warn("检查地理位置索引 {} 失败: {}", key, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String digest() {
+        K[] keys = (K[]) new Object[]{key};
+        try {
+            return scripting.evalsha(DIGEST.getSha(), ScriptOutputType.STATUS, keys);
+        } catch (RedisNoScriptException e) {
+            return scripting.eval(DIGEST.getSource(), ScriptOutputType.STATUS, keys);
+        }
+    }
+
+    private static double cellSize(double range, int step) {
+        return range / (1L << step);
+    }
+
+    /**
+     * 坐标在指定精度下的网格编号，与 Redis geohashEncode 的计算方式一致
+     */
+    private static long cell(double value, double min, double max, int step) {
+        if (value <= min) {
+            return 0;
+        }
+        if (value >= max) {
+            return (1L << step) - 1;
+        }
+        return (long) ((value - min) / (max - min) * (1L << step));
+    }
+
+    /**
+     * 网格中心坐标，与 Redis geohashDecode、geohashDecodeAreaToLongLat 的计算方式一致
+     */
+    private static double decode(long index, double min, double max) {
+        double scale = max - min;
+        double low = min + (index * 1.0 / (1L << STEP)) * scale;
+        double high = min + ((index + 1) * 1.0 / (1L << STEP)) * scale;
+        double center = (low + high) / 2;
+        return Math.max(min, Math.min(max, center));
+    }
+
+    /**
+     * 与 Redis geohashGetDistance 相同的半正矢公式
+     */
+    private static double distance(double lon1d, double lat1d, double lon2d, double lat2d) {
+        double lat1r = Math.toRadians(lat1d);
+        double lon1r = Math.toRadians(lon1d);
+        double lat2r = Math.toRadians(lat2d);
+        double lon2r = Math.toRadians(lon2d);
+        double u = Math.sin((lat2r - lat1r) / 2);
+        double v = Math.sin((lon2r - lon1r) / 2);
+        return 2.0 * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1r) * Math.cos(lat2r) * v * v));
+    }
+
+    /**
+     * 纬度占偶数位，经度占奇数位
+     */
+    private static long interleave(long lat, long lon) {
+        return spread(lat) | (spread(lon) << 1);
+    }
+
+    private static long spread(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static long squash(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
+    }
+
+    private static int lowerBound(long[] values, long target) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static class Snapshot {
+        private final long[] scores;
+        private final double[] lons;
+        private final double[] lats;
+        private final Object[] members;
+        private final String digest;
+
+        private Snapshot(long[] scores, double[] lons, double[] lats, Object[] members, String digest) {
+            this.scores = scores;
+            this.lons = lons;
+            this.lats = lats;
+            this.members = members;
+            this.digest = digest;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package sunyu.util;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * 多个哈希键的列式数据
+ * <p>
+ * 每个字段一列，每个键一行，列是与 keys 等长的数组，读写多个键的相同字段时不需要为每个键创建 Map。
+ * 由 hmgetColumns、hgetallColumns 返回，也可以自己创建后填入值交给 hsetColumns 写入。
+ * byte[] 类型的字段按内容比较。
+ * </p>
+ *
+ * <pre>
+ *     HashColumns&lt;String, String&gt; columns = redis.hmgetColumns(keys, "lat", "lon", "ts");
+ *     List&lt;String&gt; lats = columns.getColumn("lat");
+ * </pre>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class HashColumns<K, V> {
+    private final List<K> keys;
+    private final List<K> fields = new ArrayList<>();
+    private final List<Object[]> columns = new ArrayList<>();
+    private final Map<Object, Integer> index = new HashMap<>();
+
+    /**
+     * 创建列式数据，所有值为 null
+     *
+     * @param keys   键，每个键一行
+     * @param fields 字段，每个字段一列
+     */
+    public HashColumns(List<K> keys, List<K> fields) {
+        this.keys = keys;
+        for (K field : fields) {
+            addField(field);
+        }
+    }
+
+    private int addField(K field) {
+        Integer i = index.get(name(field));
+        if (i != null) {
+            return i;
+        }
+        fields.add(field);
+        columns.add(new Object[keys.size()]);
+        index.put(name(field), fields.size() - 1);
+        return fields.size() - 1;
+    }
+
+    /**
+     * 写入一个值，字段不存在时增加一列，hgetallColumns 在多个连接线程中同时调用
+     */
+    synchronized void put(int row, K field, V value) {
+        columns.get(addField(field))[row] = value;
+    }
+
+    private static Object name(Object field) {
+        return field instanceof byte[] ? ByteBuffer.wrap((byte[]) field) : field;
+    }
+
+    /**
+     * @return 键，与行号对应
+     */
+    public List<K> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return 字段，与列号对应
+     */
+    public List<K> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * @return 行数，即键的数量
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * 获取字段的列号
+     *
+     * @param field 字段
+     * @return 列号，字段不存在时为 -1
+     */
+    public int indexOf(K field) {
+        Integer i = index.get(name(field));
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * 获取一个值
+     *
+     * @param row   行号
+     * @param field 列号
+     * @return 值，键或字段不存在时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int row, int field) {
+        return (V) columns.get(field)[row];
+    }
+
+    /**
+     * 设置一个值，值为 null 时 hsetColumns 不写入该字段
+     *
+     * @param row   行号
+     * @param field 列号
+     * @param value 值
+     */
+    public void set(int row, int field, V value) {
+        columns.get(field)[row] = value;
+    }
+
+    /**
+     * 获取一列
+     *
+     * @param field 列号
+     * @return 与 keys 一一对应的值，直接引用内部数组
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> getColumn(int field) {
+        return Arrays.asList((V[]) columns.get(field));
+    }
+
+    /**
+     * 获取一列
+     *
+     * @param field 字段
+     * @return 与 keys 一一对应的值，字段不存在时为 null
+     */
+    public List<V> getColumn(K field) {
+        int i = indexOf(field);
+        return i < 0 ? null : getColumn(i);
+    }
+
+}
@@ -0,0 +1,142 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadUtil;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 对冲读取
+ * <p>
+ * 先在普通连接上读取，超过阈值仍未完成时在对冲连接上（按延迟选择另一个节点）再发一次相同的读取，
+ * 使用先成功的结果；普通连接上的读取失败时立即发出对冲，两次都失败时以后一次的异常结束。阈值为最近读取延迟的指定分位数，
+ * 每10秒换一个统计窗口，不低于设置的最小等待时间。
+ * </p>
+ * <p>
+ * 只应用于只读命令。对冲会增加少量请求（分位数为 p95 时约5%），换来慢节点上的长尾延迟被截断。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class HedgedReads implements AutoCloseable {
+    private static final long WINDOW_SECONDS = 10;
+
+    private final double percentile;
+    private final long minDelay;
+    private final ScheduledExecutorService scheduler;
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile long threshold;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder backupWins = new LongAdder();
+
+    /**
+     * 创建对冲读取
+     *
+     * @param percentile 触发对冲的延迟分位，例如 95
+     * @param minDelay   最小等待时间(毫秒)
+     */
+    public HedgedReads(double percentile, long minDelay) {
+        this.percentile = percentile;
+        this.minDelay = TimeUnit.MILLISECONDS.toNanos(minDelay);
+        this.threshold = this.minDelay;
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("redis-hedge-", true));
+        scheduler.scheduleAtFixedRate(this::rotate, WINDOW_SECONDS, WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void rotate() {
+        LatencyHistogram window = current;
+        current = new LatencyHistogram();
+        if (window.getCount() > 0) {
+            threshold = Math.max(minDelay, window.getPercentile(percentile));
+        }
+    }
+
+    /**
+     * 执行对冲读取
+     *
+     * @param primary 在普通连接上发出读取
+     * @param backup  在对冲连接上发出相同的读取
+     * @param <R>     结果类型
+     * @return 先成功的结果
+     */
+    public <R> CompletableFuture<R> read(Supplier<? extends CompletionStage<R>> primary,
+                                         Supplier<? extends CompletionStage<R>> backup) {
+        reads.increment();
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicBoolean backupSent = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+        Runnable sendBackup = () -> {
+            if (backupSent.compareAndSet(false, true)) {
+                hedged.increment();
+                backup.get().whenComplete((value, error) -> {
+                    if (error == null) {
+                        if (result.complete(value)) {
+                            backupWins.increment();
+                        }
+                    } else if (failures.incrementAndGet() == 2) {
+                        result.completeExceptionally(error);
+                    }
+                });
+            }
+        };
+        long start = System.nanoTime();
+        primary.get().whenComplete((value, error) -> {
+            current.record(System.nanoTime() - start);
+            if (error == null) {
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(error);
+            } else if (!backupSent.get()) {
+                // 主读取失败时不再等待阈值，立即在另一个节点上读取
+                sendBackup.run();
+            }
+        });
+        if (!result.isDone()) {
+            ScheduledFuture<?> timer = scheduler.schedule(() -> {
+                if (!result.isDone()) {
+                    sendBackup.run();
+                }
+            }, threshold, TimeUnit.NANOSECONDS);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * @return 当前的对冲阈值(毫秒)
+     */
+    public double getThreshold() {
+        return threshold / 1e6;
+    }
+
+    /**
+     * @return 读取次数
+     */
+    public long getReadCount() {
+        return reads.sum();
+    }
+
+    /**
+     * @return 发出对冲的次数
+     */
+    public long getHedgedCount() {
+        return hedged.sum();
+    }
+
+    /**
+     * @return 对冲先返回结果的次数
+     */
+    public long getBackupWinCount() {
+        return backupWins.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+}
@@ -0,0 +1,262 @@
+package sunyu.util;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热点键和大键采样
+ * <p>
+ * 工具类的 get、mget、pipeline 等操作按采样率抽取一部分访问，记录键名和值的大小，
+ * 用 Space-Saving 算法分别维护访问次数最多和读写字节最多的 top-K 个键与键前缀（最后一个 : 之前的部分）。
+ * 每个维度固定保存 capacity 个计数器，内存占用与键的数量无关；计数是估计值，
+ * 真实值在 [估计值 - 误差, 估计值] 之间，出现频率越高的键越准确。
+ * </p>
+ * <p>
+ * 未被采样的访问只有一次随机数比较。直接使用 getCommands() 等命令对象发出的命令不经过采样。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class KeySampler {
+    private static final String DELIMITER = ":";
+
+    private final double rate;
+    private final SpaceSaving hotKeys;
+    private final SpaceSaving bigKeys;
+    private final SpaceSaving hotPrefixes;
+    private final SpaceSaving bigPrefixes;
+
+    /**
+     * 创建采样器
+     *
+     * @param rate     采样率，0到1之间，例如 0.01 表示每100次访问记录1次
+     * @param capacity 每个维度保存的计数器数量，建议为需要的 top 数量的10倍以上
+     */
+    public KeySampler(double rate, int capacity) {
+        this.rate = rate;
+        hotKeys = new SpaceSaving(capacity);
+        bigKeys = new SpaceSaving(capacity);
+        hotPrefixes = new SpaceSaving(capacity);
+        bigPrefixes = new SpaceSaving(capacity);
+    }
+
+    /**
+     * 本次访问是否采样，返回 true 时再计算键名和大小并调用 {@link #record(String, long)}
+     *
+     * @return 是否采样
+     */
+    public boolean sample() {
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * 记录一次采样到的访问
+     *
+     * @param key   键
+     * @param bytes 读到或写入的值的大小(字节)
+     */
+    public void record(String key, long bytes) {
+        int end = key.lastIndexOf(DELIMITER);
+        String prefix = end < 0 ? key : key.substring(0, end + DELIMITER.length());
+        hotKeys.add(key, 1);
+        hotPrefixes.add(prefix, 1);
+        if (bytes > 0) {
+            bigKeys.add(key, bytes);
+            bigPrefixes.add(prefix, bytes);
+        }
+    }
+
+    /**
+     * @param top 数量
+     * @return 访问次数最多的键，计数已按采样率换算
+     */
+    public List<Counter> getHotKeys(int top) {
+        return hotKeys.top(top, rate);
+    }
+
+    /**
+     * @param top 数量
+     * @return 读写字节最多的键，字节数已按采样率换算
+     */
+    public List<Counter> getBigKeys(int top) {
+        return bigKeys.top(top, rate);
+    }
+
+    /**
+     * @param top 数量
+     * @return 访问次数最多的键前缀
+     */
+    public List<Counter> getHotPrefixes(int top) {
+        return hotPrefixes.top(top, rate);
+    }
+
+    /**
+     * @param top 数量
+     * @return 读写字节最多的键前缀
+     */
+    public List<Counter> getBigPrefixes(int top) {
+        return bigPrefixes.top(top, rate);
+    }
+
+    /**
+     * 清空计数，开始新的统计周期
+     */
+    public void reset() {
+        hotKeys.clear();
+        bigKeys.clear();
+        hotPrefixes.clear();
+        bigPrefixes.clear();
+    }
+
+    /**
+     * Space-Saving 计数器：满了以后用新元素替换计数最小的元素，新元素继承其计数作为误差
+     * <p>
+     * 计数器按计数组成最小堆，堆顶就是要替换的元素，每次更新只需 O(log capacity) 次比较
+     * </p>
+     */
+    private static class SpaceSaving {
+        private final int capacity;
+        private final Map<String, Node> counters;
+        private final Node[] heap;
+        private int size;
+
+        SpaceSaving(int capacity) {
+            capacity = Math.max(1, capacity);
+            this.capacity = capacity;
+            this.counters = new HashMap<>(capacity * 2);
+            this.heap = new Node[capacity];
+        }
+
+        synchronized void add(String item, long weight) {
+            Node node = counters.get(item);
+            if (node != null) {
+                node.count += weight;
+                siftDown(node.index);
+                return;
+            }
+            if (size < capacity) {
+                node = new Node(item, weight, 0);
+                node.index = size;
+                heap[size++] = node;
+                counters.put(item, node);
+                siftUp(node.index);
+                return;
+            }
+            // 计数最小的元素在堆顶，直接替换后下沉
+            node = heap[0];
+            counters.remove(node.item);
+            node.item = item;
+            node.error = node.count;
+            node.count += weight;
+            counters.put(item, node);
+            siftDown(0);
+        }
+
+        private void siftUp(int i) {
+            Node node = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].count <= node.count) {
+                    break;
+                }
+                move(heap[parent], i);
+                i = parent;
+            }
+            move(node, i);
+        }
+
+        private void siftDown(int i) {
+            Node node = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                    child++;
+                }
+                if (node.count <= heap[child].count) {
+                    break;
+                }
+                move(heap[child], i);
+                i = child;
+            }
+            move(node, i);
+        }
+
+        private void move(Node node, int i) {
+            heap[i] = node;
+            node.index = i;
+        }
+
+        synchronized List<Counter> top(int top, double rate) {
+            List<Counter> list = new ArrayList<>(size);
+            double scale = rate > 0 && rate < 1 ? 1 / rate : 1;
+            for (int i = 0; i < size; i++) {
+                Node node = heap[i];
+                list.add(new Counter(node.item, Math.round(node.count * scale), Math.round(node.error * scale)));
+            }
+            list.sort((a, b) -> Long.compare(b.count, a.count));
+            return list.size() > top ? new ArrayList<>(list.subList(0, top)) : list;
+        }
+
+        synchronized void clear() {
+            counters.clear();
+            Arrays.fill(heap, 0, size, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * 堆中的一个计数器
+     */
+    private static class Node {
+        private String item;
+        private long count;
+        private long error;
+        private int index;
+
+        Node(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 一个键或键前缀的计数
+     */
+    public static class Counter {
+        private final String name;
+        private final long count;
+        private final long error;
+
+        Counter(String name, long count, long error) {
+            this.name = name;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 估计的访问次数或字节数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 估计值的最大误差
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + count + (error > 0 ? "(±" + error + ")" : "");
+        }
+    }
+
+}
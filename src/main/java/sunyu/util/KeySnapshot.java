@@ -0,0 +1,313 @@
+package sunyu.util;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.RedisCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 键的快照导出和导入结果
+ * <p>
+ * 导出：每个节点（集群为每个主节点）一个线程 SCAN，每页的键同时发出 DUMP 和 PTTL，
+ * 以长度前缀的二进制记录写入同一个文件（1MB 缓冲）。导入：顺序读取文件，每 batchSize 条记录按槽位分组后
+ * 在批量执行专用连接上一次发送 RESTORE。DUMP 格式与 Redis 版本相关，导入端的版本不能低于导出端。
+ * </p>
+ * <p>
+ * 文件格式：魔数 RSNP、版本号，之后每条记录为 键长度(int) 键 过期时刻(long，毫秒时间戳，-1表示不过期) 值长度(int) DUMP 值，
+ * 以键长度 -1 结束。过期时刻为绝对时间，导入时已经过期的键直接跳过。
+ * 导出先写入同目录的临时文件，写完结束标记后再替换目标文件，任一节点失败时删除临时文件，目标文件保持不变。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class KeySnapshot {
+    private static final Log log = LogFactory.get();
+    private static final int MAGIC = 0x52534E50;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final long start = System.nanoTime();
+    private long elapsed;
+
+    private KeySnapshot() {
+    }
+
+    /**
+     * 导出到文件
+     *
+     * @param nodes    各节点的异步命令对象
+     * @param codec    编解码器，用于取得键的原始字节
+     * @param scanArgs 扫描参数
+     * @param file     文件，已存在时覆盖
+     * @param <K>      Redis 键的类型
+     * @param <V>      Redis 值的类型
+     * @return 导出结果
+     */
+    static <K, V> KeySnapshot export(Map<String, ? extends RedisClusterAsyncCommands<K, V>> nodes, RedisCodec<K, V> codec,
+                                     ScanArgs scanArgs, Path file) {
+        KeySnapshot result = new KeySnapshot();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nodes.size()),
+                ThreadUtil.newNamedThreadFactory("redis-export-", true));
+        // 先写入同目录的临时文件，写完结束标记后再替换目标文件，失败时不留下没有结束标记的文件
+        Path temp;
+        try {
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        } catch (IOException e) {
+            executor.shutdown();
+            throw new IORuntimeException(e);
+        }
+        boolean completed = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                List<CompletableFuture<?>> tasks = new ArrayList<>();
+                nodes.forEach((node, commands) -> tasks.add(CompletableFuture.runAsync(() -> {
+                    result.exportNode(commands, codec, scanArgs, out);
+                    log.info("导出节点 {} 完成", node);
+                }, executor)));
+                AbstractRedisOperations.join(CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])));
+                out.writeInt(-1);
+            }
+            move(temp, file);
+            completed = true;
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.warn("删除临时文件失败 {}: {}", temp, e.getMessage());
+                }
+            }
+        }
+        result.elapsed = System.nanoTime() - result.start;
+        log.info("导出 {}", result);
+        return result;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private <K, V> void exportNode(RedisClusterAsyncCommands<K, V> commands, RedisCodec<K, V> codec, ScanArgs scanArgs,
+                                   DataOutputStream out) {
+        KeyScanCursor<K> cursor = null;
+        do {
+            cursor = AbstractRedisOperations.join((cursor == null ? commands.scan(scanArgs) : commands.scan(cursor, scanArgs))
+                    .toCompletableFuture());
+            List<K> page = cursor.getKeys();
+            List<RedisFuture<byte[]>> dumps = new ArrayList<>(page.size());
+            List<RedisFuture<Long>> ttls = new ArrayList<>(page.size());
+            for (K key : page) {
+                dumps.add(commands.dump(key));
+                ttls.add(commands.pttl(key));
+            }
+            long now = System.currentTimeMillis();
+            // 先等齐一页再加锁写入，加锁期间不做网络等待
+            List<byte[]> values = new ArrayList<>(page.size());
+            List<Long> expireAts = new ArrayList<>(page.size());
+            for (int i = 0; i < page.size(); i++) {
+                values.add(AbstractRedisOperations.join(dumps.get(i).toCompletableFuture()));
+                Long ttl = AbstractRedisOperations.join(ttls.get(i).toCompletableFuture());
+                expireAts.add(ttl != null && ttl >= 0 ? now + ttl : -1L);
+            }
+            try {
+                synchronized (out) {
+                    for (int i = 0; i < page.size(); i++) {
+                        byte[] value = values.get(i);
+                        if (value == null) {
+                            // 扫描到之后被删除或过期
+                            continue;
+                        }
+                        ByteBuffer encoded = codec.encodeKey(page.get(i));
+                        byte[] key = new byte[encoded.remaining()];
+                        encoded.get(key);
+                        out.writeInt(key.length);
+                        out.write(key);
+                        out.writeLong(expireAts.get(i));
+                        out.writeInt(value.length);
+                        out.write(value);
+                        keys.increment();
+                        bytes.add(value.length);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+        } while (!cursor.isFinished());
+    }
+
+    /**
+     * 从文件导入
+     *
+     * @param redis     工具类
+     * @param file      文件
+     * @param batchSize 每批发送的 RESTORE 数量
+     * @param replace   键已存在时是否覆盖，不覆盖时计为失败
+     * @param <K>       Redis 键的类型
+     * @param <V>       Redis 值的类型
+     * @return 导入结果
+     */
+    static <K, V> KeySnapshot restore(AbstractRedisOperations<K, V, ?, ?> redis, Path file, int batchSize, boolean replace) {
+        KeySnapshot result = new KeySnapshot();
+        RedisCodec<K, V> codec = redis.getCodec();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("不是快照文件或版本不支持: " + file);
+            }
+            List<K> batchKeys = new ArrayList<>(batchSize);
+            List<byte[]> batchValues = new ArrayList<>(batchSize);
+            List<Long> batchExpireAts = new ArrayList<>(batchSize);
+            for (int keyLength = in.readInt(); keyLength >= 0; keyLength = in.readInt()) {
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                long expireAt = in.readLong();
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                batchKeys.add(codec.decodeKey(ByteBuffer.wrap(key)));
+                batchValues.add(value);
+                batchExpireAts.add(expireAt);
+                if (batchKeys.size() >= batchSize) {
+                    result.restoreBatch(redis, batchKeys, batchValues, batchExpireAts, replace);
+                    batchKeys.clear();
+                    batchValues.clear();
+                    batchExpireAts.clear();
+                }
+            }
+            result.restoreBatch(redis, batchKeys, batchValues, batchExpireAts, replace);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+        result.elapsed = System.nanoTime() - result.start;
+        log.info("导入 {}", result);
+        return result;
+    }
+
+    private <K, V> void restoreBatch(AbstractRedisOperations<K, V, ?, ?> redis, List<K> batchKeys, List<byte[]> batchValues,
+                                     List<Long> batchExpireAts, boolean replace) {
+        if (batchKeys.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<RedisFuture<String>> futures = new ArrayList<>(batchKeys.size());
+        List<byte[]> sent = new ArrayList<>(batchKeys.size());
+        try {
+            redis.pipeline(p -> {
+                for (int[] group : redis.groupForMget(batchKeys, batchKeys.size())) {
+                    for (int i : group) {
+                        long expireAt = batchExpireAts.get(i);
+                        if (expireAt >= 0 && expireAt <= now) {
+                            expired.increment();
+                            continue;
+                        }
+                        RestoreArgs args = new RestoreArgs().ttl(expireAt < 0 ? 0 : expireAt - now);
+                        if (replace) {
+                            args.replace();
+                        }
+                        K key = batchKeys.get(i);
+                        byte[] value = batchValues.get(i);
+                        futures.add(p.command(c -> c.restore(key, value, args)));
+                        sent.add(value);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // 各命令的结果在下面分别统计
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i).toCompletableFuture().isCompletedExceptionally()) {
+                failed.increment();
+            } else {
+                keys.increment();
+                bytes.add(sent.get(i).length);
+            }
+        }
+    }
+
+    /**
+     * @return 导出或导入成功的键数量
+     */
+    public long getKeys() {
+        return keys.sum();
+    }
+
+    /**
+     * @return DUMP 值的总字节数
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return 导入时已经过期而跳过的键数量
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * @return 导入失败的键数量，例如键已存在且不覆盖
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 耗时(毫秒)
+     */
+    public long getElapsed() {
+        return elapsed / 1_000_000;
+    }
+
+    /**
+     * @return 每秒键数量
+     */
+    public double getKeysPerSecond() {
+        return getKeys() / Math.max(1e-9, elapsed / 1e9);
+    }
+
+    /**
+     * @return 每秒字节数(MB)
+     */
+    public double getMegabytesPerSecond() {
+        return getBytes() / 1048576.0 / Math.max(1e-9, elapsed / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("keys=%d bytes=%d expired=%d failed=%d elapsed=%dms %.0f keys/s %.1f MB/s",
+                getKeys(), getBytes(), getExpired(), getFailed(), getElapsed(), getKeysPerSecond(), getMegabytesPerSecond());
+    }
+
+}
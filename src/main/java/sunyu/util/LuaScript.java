@@ -0,0 +1,41 @@
+package sunyu.util;
+
+import cn.hutool.crypto.SecureUtil;
+
+/**
+ * 已注册的 Lua 脚本，创建时计算一次 SHA1，之后只用 EVALSHA 发送摘要
+ * <p>
+ * 通过 {@link AbstractRedisOperations#script(String)} 注册获得，可以保存为常量反复使用
+ * </p>
+ *
+ * @author SunYu
+ */
+public final class LuaScript {
+    private final String source;
+    private final String sha;
+
+    LuaScript(String source) {
+        this.source = source;
+        this.sha = SecureUtil.sha1(source);
+    }
+
+    /**
+     * @return 脚本内容
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return 脚本的 SHA1 摘要（小写十六进制）
+     */
+    public String getSha() {
+        return sha;
+    }
+
+    @Override
+    public String toString() {
+        return sha;
+    }
+
+}
@@ -0,0 +1,159 @@
+package sunyu.util;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地近端缓存
+ * <p>
+ * 缓存 get/mget 读到的值，容量满时按 LRU 淘汰，超过存活时间自动失效；
+ * 键在 Redis 中被修改、删除或过期时，由键空间通知（keyspace notifications）驱动失效。
+ * 需要服务端开启键空间通知，例如 {@code CONFIG SET notify-keyspace-events KA}。
+ * </p>
+ * <p>
+ * 只缓存以指定前缀开头的键，值为 null 的结果不缓存。键统一转换成字符串后缓存，因此 byte[] 等类型的键也可以使用。
+ * 从发出读取到写入缓存之间如果收到该键的失效通知，读到的值不会写入缓存，避免旧值覆盖失效。
+ * 失效通知只订阅主节点，工具类写入缓存的读取固定发往主节点（ReadFrom.UPSTREAM），不会缓存落后的从节点上的旧值。
+ * </p>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class NearCache<K, V> {
+    private final RedisCodec<K, V> codec;
+    private final String keyPrefix;
+    private final long ttl;
+    private final LRUCache<String, V> cache;
+    /**
+     * 正在从 Redis 读取的键，收到失效通知时移除，读取结束时只有令牌仍然有效才写入缓存
+     */
+    private final ConcurrentHashMap<String, Object> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 创建近端缓存
+     *
+     * @param codec     连接使用的编解码器，用于把键转换成字符串
+     * @param keyPrefix 键前缀，只缓存以此开头的键，空字符串表示缓存所有键
+     * @param capacity  最大缓存数量
+     * @param ttl       存活时间(毫秒)，0表示不过期，只依赖失效通知和LRU淘汰
+     */
+    public NearCache(RedisCodec<K, V> codec, String keyPrefix, int capacity, long ttl) {
+        this.codec = codec;
+        this.keyPrefix = keyPrefix;
+        this.ttl = ttl;
+        this.cache = CacheUtil.newLRUCache(capacity, ttl);
+    }
+
+    /**
+     * 键是否使用本地缓存
+     *
+     * @param key 键
+     * @return 是否缓存
+     */
+    public boolean accept(K key) {
+        return name(key).startsWith(keyPrefix);
+    }
+
+    /**
+     * 获取缓存的值，同时统计命中和未命中次数
+     *
+     * @param key 键
+     * @return 值，未命中时为 null
+     */
+    public V get(K key) {
+        return cache.get(name(key));
+    }
+
+    /**
+     * 开始从 Redis 读取，返回的令牌需要传给 {@link #completeLoad(Object, Object, Object)}
+     *
+     * @param key 键
+     * @return 令牌
+     */
+    public Object beginLoad(K key) {
+        Object token = new Object();
+        loading.put(name(key), token);
+        return token;
+    }
+
+    /**
+     * 读取结束，令牌仍然有效时写入缓存
+     *
+     * @param key   键
+     * @param token {@link #beginLoad(Object)} 返回的令牌
+     * @param value 读到的值
+     */
+    public void completeLoad(K key, Object token, V value) {
+        String name = name(key);
+        if (loading.remove(name, token) && value != null) {
+            cache.put(name, value, ttl);
+        }
+    }
+
+    /**
+     * 使键失效
+     *
+     * @param name 字符串形式的键，即键空间通知频道名中的键
+     */
+    public void invalidate(String name) {
+        loading.remove(name);
+        cache.remove(name);
+    }
+
+    /**
+     * 使所有键失效，通知连接断开重连后调用，因为断开期间的通知已经丢失
+     */
+    public void invalidateAll() {
+        loading.clear();
+        cache.clear();
+    }
+
+    /**
+     * 键前缀
+     *
+     * @return 键前缀
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * 命中次数
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * 未命中次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * 当前缓存数量
+     *
+     * @return 缓存数量
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private String name(K key) {
+        if (key instanceof String) {
+            return (String) key;
+        }
+        return StringCodec.UTF8.decodeKey(codec.encodeKey(key));
+    }
+
+}
@@ -0,0 +1,244 @@
+package sunyu.util;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.event.DefaultEventPublisherOptions;
+import io.lettuce.core.metrics.CommandLatencyCollector;
+import io.lettuce.core.metrics.CommandLatencyId;
+import io.lettuce.core.metrics.CommandMetrics;
+import io.lettuce.core.models.role.RedisNodeDescription;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 各节点的命令延迟跟踪，用于按延迟选择读取节点
+ * <p>
+ * 作为客户端资源的 CommandLatencyCollector，在每个命令完成时按节点更新指数加权平均延迟（阻塞命令除外），
+ * {@link #readFrom()} 返回的读取策略按平均延迟从低到高排列节点。开启命令指标时，记录同时转交给 {@link RedisMetrics}。
+ * </p>
+ * <p>
+ * 从未有过记录的节点延迟视为0，排在最前面被探测一次；超过1秒没有新记录的节点保留最后的平均延迟，
+ * 之后每过 10 秒减半，慢节点不会因为没被选中而被当成最快的节点，恢复后的节点也能逐渐重新分到读取。
+ * 集群连接按槽位缓存读取节点，没有被选中的节点分不到读取，由工具类在重新选择时用 PING 探测（见 {@link #isStale(RedisURI)}）。
+ * 节点按地址匹配，集群和主从拓扑中的节点地址需要与实际连接的地址一致（通常都是 IP）。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class NodeLatencies implements CommandLatencyCollector {
+    /**
+     * 阻塞命令的耗时取决于等待时间，不代表节点延迟
+     */
+    private static final Set<String> BLOCKING = new HashSet<>(Arrays.asList(
+            "BLPOP", "BRPOP", "BRPOPLPUSH", "BZPOPMIN", "BZPOPMAX", "XREAD", "XREADGROUP", "WAIT",
+            "SUBSCRIBE", "PSUBSCRIBE"));
+    private static final double ALPHA = 0.2;
+    private static final long STALE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final CommandLatencyCollector next;
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicLong lastReselect = new AtomicLong(System.nanoTime());
+
+    /**
+     * 创建延迟跟踪
+     *
+     * @param next 同时接收记录的收集器，例如 {@link RedisMetrics}，可以为 null
+     */
+    public NodeLatencies(CommandLatencyCollector next) {
+        this.next = next;
+    }
+
+    /**
+     * 创建使用本对象记录命令延迟的客户端资源，关闭了 Lettuce 自带的定时延迟事件
+     *
+     * @param shared 共享的客户端资源，不为 null 时返回它的副本，与它共用事件循环、计算线程和定时器，
+     *               关闭副本会同时关闭这些共用的线程，因此不能关闭副本，只能由共享资源按引用计数释放
+     * @return 客户端资源，shared 为 null 时需要在客户端关闭后调用 shutdown
+     */
+    public ClientResources createClientResources(ClientResources shared) {
+        ClientResources.Builder builder = shared == null ? DefaultClientResources.builder() : shared.mutate();
+        return builder
+                .commandLatencyCollector(this)
+                .commandLatencyPublisherOptions(DefaultEventPublisherOptions.disabled())
+                .build();
+    }
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+                                     long firstResponseLatency, long completionLatency) {
+        if (!BLOCKING.contains(commandType.name())) {
+            String name = node(remote);
+            Node node = nodes.get(name);
+            if (node == null) {
+                node = nodes.computeIfAbsent(name, k -> new Node());
+            }
+            node.record(completionLatency);
+        }
+        if (next != null) {
+            next.recordCommandLatency(local, remote, commandType, firstResponseLatency, completionLatency);
+        }
+    }
+
+    @Override
+    public Map<CommandLatencyId, CommandMetrics> retrieveMetrics() {
+        return next == null ? Collections.emptyMap() : next.retrieveMetrics();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * 获取节点的平均延迟
+     *
+     * @param host 地址
+     * @param port 端口
+     * @return 平均延迟(毫秒)，没有记录时为 -1
+     */
+    public double getLatency(String host, int port) {
+        Node node = nodes.get(host + ":" + port);
+        return node == null ? -1 : node.average() / 1e6;
+    }
+
+    /**
+     * @return 各节点的平均延迟(毫秒)
+     */
+    public Map<String, Double> getLatencies() {
+        Map<String, Double> latencies = new TreeMap<>();
+        for (Map.Entry<String, Node> e : nodes.entrySet()) {
+            latencies.put(e.getKey(), e.getValue().average() / 1e6);
+        }
+        return latencies;
+    }
+
+    /**
+     * 按延迟从低到高选择节点的读取策略，主从节点都参与
+     *
+     * @return 读取策略
+     */
+    public ReadFrom readFrom() {
+        return readFrom(0);
+    }
+
+    /**
+     * 按延迟排序后把第 rank 个节点放在最前面的读取策略，对冲读取用1选择延迟第二低的节点
+     *
+     * @param rank 名次，从0开始，超过节点数时取最后一个
+     * @return 读取策略
+     */
+    public ReadFrom readFrom(int rank) {
+        return new LowestLatency(rank);
+    }
+
+    /**
+     * 集群连接按槽位缓存读取节点，只在拓扑变化或重新设置读取策略时重新选择，
+     * 调用方据此每秒最多重新设置一次，让选择跟上延迟变化
+     *
+     * @return 是否到了重新选择的时间
+     */
+    boolean reselect() {
+        long last = lastReselect.get();
+        long now = System.nanoTime();
+        return now - last > STALE_NANOS && lastReselect.compareAndSet(last, now);
+    }
+
+    /**
+     * 节点是否超过1秒没有新的延迟记录，需要探测
+     *
+     * @param uri 节点地址
+     * @return 是否需要探测
+     */
+    boolean isStale(RedisURI uri) {
+        Node node = nodes.get(uri.getHost() + ":" + uri.getPort());
+        return node == null || System.nanoTime() - node.updated > STALE_NANOS;
+    }
+
+    private double effective(RedisNodeDescription description, long now) {
+        RedisURI uri = description.getUri();
+        Node node = nodes.get(uri.getHost() + ":" + uri.getPort());
+        if (node == null) {
+            return 0;
+        }
+        long age = now - node.updated;
+        if (age <= STALE_NANOS) {
+            return node.average();
+        }
+        return node.average() * Math.pow(0.5, (age - STALE_NANOS) / HALF_LIFE_NANOS);
+    }
+
+    private static String node(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getHostString() + ":" + inet.getPort();
+        }
+        return String.valueOf(address);
+    }
+
+    private static class Node {
+        private final AtomicLong average = new AtomicLong(Double.doubleToLongBits(-1));
+        private volatile long updated;
+
+        void record(long latency) {
+            long current;
+            long next;
+            do {
+                current = average.get();
+                double value = Double.longBitsToDouble(current);
+                next = Double.doubleToLongBits(value < 0 ? latency : value + ALPHA * (latency - value));
+            } while (!average.compareAndSet(current, next));
+            updated = System.nanoTime();
+        }
+
+        double average() {
+            return Math.max(0, Double.longBitsToDouble(average.get()));
+        }
+    }
+
+    private class LowestLatency extends ReadFrom {
+        private final int rank;
+
+        LowestLatency(int rank) {
+            this.rank = rank;
+        }
+
+        @Override
+        public List<RedisNodeDescription> select(Nodes nodes) {
+            long now = System.nanoTime();
+            List<RedisNodeDescription> sorted = new ArrayList<>(nodes.getNodes());
+            Map<RedisNodeDescription, Double> latencies = new IdentityHashMap<>();
+            for (RedisNodeDescription node : sorted) {
+                latencies.put(node, effective(node, now));
+            }
+            sorted.sort(Comparator.comparingDouble(latencies::get));
+            if (rank > 0 && !sorted.isEmpty()) {
+                sorted.add(0, sorted.remove(Math.min(rank, sorted.size() - 1)));
+            }
+            return sorted;
+        }
+
+        @Override
+        protected boolean isOrderSensitive() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return rank == 0 ? "LowestLatency" : "LowestLatency[" + rank + "]";
+        }
+    }
+
+}
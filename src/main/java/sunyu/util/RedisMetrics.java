@@ -0,0 +1,444 @@
+package sunyu.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.event.DefaultEventPublisherOptions;
+import io.lettuce.core.metrics.CommandLatencyCollector;
+import io.lettuce.core.metrics.CommandLatencyId;
+import io.lettuce.core.metrics.CommandMetrics;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis 命令指标
+ * <p>
+ * 延迟由 Lettuce 在命令完成时回调记录（作为客户端资源的 CommandLatencyCollector），
+ * 按节点和命令分别保存 {@link LatencyHistogram}，可得到 p50、p99、p999 和吞吐量；
+ * 失败数、超时数和在途命令数由包装后的命令对象统计，不需要计时，只有几次计数器自增。
+ * 吞吐量按最近60秒的滑动窗口计算，计数、分位数按整个统计周期（上次 reset 以来）计算。
+ * </p>
+ * <p>
+ * 包装使用 JDK 动态代理，每个命令多一次反射调用，异步命令多注册一次完成回调，
+ * 开销见 jmh 中的 ProxyBenchmark（相对一次网络往返可以忽略）。
+ * </p>
+ * <p>
+ * 通过构建器的 metrics 方法开启，使用 {@code getMetrics()} 读取快照，指定名称时同时注册到 JMX：
+ * {@code sunyu.util:type=RedisMetrics,name=名称}。
+ * </p>
+ *
+ * @author SunYu
+ */
+public class RedisMetrics implements CommandLatencyCollector, RedisMetricsMXBean {
+    private static final Log log = LogFactory.get();
+
+    private final String name;
+    private final ConcurrentHashMap<SocketAddress, ConcurrentHashMap<String, Entry>> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> timeouts = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private volatile long startTime = System.nanoTime();
+    private ObjectName objectName;
+
+    /**
+     * 创建命令指标
+     *
+     * @param name 名称，不为空时注册到 JMX
+     */
+    public RedisMetrics(String name) {
+        this.name = name;
+        if (name != null && !name.isEmpty()) {
+            try {
+                objectName = new ObjectName("sunyu.util:type=RedisMetrics,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                log.info("注册 JMX 指标 {}", objectName);
+            } catch (JMException e) {
+                log.warn("注册 JMX 指标失败 {}: {}", name, e.getMessage());
+                objectName = null;
+            }
+        }
+    }
+
+    /**
+     * 包装命令对象，统计失败数、超时数和在途命令数
+     *
+     * @param type   命令接口，例如 RedisCommands.class
+     * @param target 命令对象
+     * @param <C>    命令接口类型
+     * @return 包装后的命令对象
+     */
+    public <C> C wrap(Class<C> type, C target) {
+        return CommandProxy.wrap(type, target, new CommandProxy.Listener() {
+            @Override
+            public Object started(Method method, Object[] args) {
+                inFlight.increment();
+                // dispatch 的命令名在第一个参数中
+                return args != null && args.length > 0 && args[0] instanceof ProtocolKeyword ? args[0] : null;
+            }
+
+            @Override
+            public void completed(Object context, Method method, Throwable error) {
+                inFlight.decrement();
+                if (error != null) {
+                    failed(context != null ? ((ProtocolKeyword) context).name() : method.getName().toUpperCase(Locale.ROOT), error);
+                }
+            }
+        });
+    }
+
+    private void failed(String command, Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        errors.computeIfAbsent(command, k -> new LongAdder()).increment();
+        if (e instanceof RedisCommandTimeoutException) {
+            timeouts.computeIfAbsent(command, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 创建使用本指标记录命令延迟的客户端资源，关闭了 Lettuce 自带的定时延迟事件
+     *
+     * @param shared 共享的客户端资源，不为 null 时返回它的副本，与它共用事件循环、计算线程和定时器，
+     *               关闭副本会同时关闭这些共用的线程，因此不能关闭副本，只能由共享资源按引用计数释放
+     * @return 客户端资源，shared 为 null 时需要在客户端关闭后调用 shutdown
+     */
+    public ClientResources createClientResources(ClientResources shared) {
+        ClientResources.Builder builder = shared == null ? DefaultClientResources.builder() : shared.mutate();
+        return builder
+                .commandLatencyCollector(this)
+                .commandLatencyPublisherOptions(DefaultEventPublisherOptions.disabled())
+                .build();
+    }
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+                                     long firstResponseLatency, long completionLatency) {
+        ConcurrentHashMap<String, Entry> commands = latencies.get(remote);
+        if (commands == null) {
+            commands = latencies.computeIfAbsent(remote, k -> new ConcurrentHashMap<>());
+        }
+        String command = commandType.name();
+        Entry entry = commands.get(command);
+        if (entry == null) {
+            entry = commands.computeIfAbsent(command, k -> new Entry(CommandLatencyId.create(local, remote, commandType)));
+        }
+        entry.firstResponse.record(firstResponseLatency);
+        entry.completion.record(completionLatency);
+        entry.window.increment(Window.now());
+    }
+
+    /**
+     * 转换成 Lettuce 的指标格式，键中的本地地址为各节点第一次记录时的连接地址
+     *
+     * @return 按节点和命令的延迟指标
+     */
+    @Override
+    public Map<CommandLatencyId, CommandMetrics> retrieveMetrics() {
+        Map<CommandLatencyId, CommandMetrics> metrics = new LinkedHashMap<>();
+        for (ConcurrentHashMap<String, Entry> commands : latencies.values()) {
+            for (Entry entry : commands.values()) {
+                metrics.put(entry.id, new CommandMetrics(entry.completion.getCount(), TimeUnit.NANOSECONDS,
+                        latency(entry.firstResponse), latency(entry.completion)));
+            }
+        }
+        return metrics;
+    }
+
+    private static CommandMetrics.CommandLatency latency(LatencyHistogram histogram) {
+        Map<Double, Long> percentiles = new TreeMap<>();
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            percentiles.put(percentile, histogram.getPercentile(percentile));
+        }
+        return new CommandMetrics.CommandLatency(histogram.getMin(), histogram.getMax(), percentiles);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * 注销 JMX，由工具类关闭时调用
+     */
+    @Override
+    public void shutdown() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("注销 JMX 指标失败 {}: {}", name, e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getCommandCount() {
+        long count = 0;
+        for (ConcurrentHashMap<String, Entry> commands : latencies.values()) {
+            for (Entry entry : commands.values()) {
+                count += entry.completion.getCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public double getThroughput() {
+        long now = Window.now();
+        long count = 0;
+        for (ConcurrentHashMap<String, Entry> commands : latencies.values()) {
+            for (Entry entry : commands.values()) {
+                count += entry.window.sum(now);
+            }
+        }
+        return count / windowSeconds();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return sum(errors);
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return sum(timeouts);
+    }
+
+    @Override
+    public Map<String, Stats> getCommandStats() {
+        long now = Window.now();
+        Map<String, LatencyHistogram> histograms = new TreeMap<>();
+        Map<String, Long> recent = new HashMap<>();
+        for (ConcurrentHashMap<String, Entry> commands : latencies.values()) {
+            for (Map.Entry<String, Entry> e : commands.entrySet()) {
+                histograms.computeIfAbsent(e.getKey(), k -> new LatencyHistogram()).add(e.getValue().completion);
+                recent.merge(e.getKey(), e.getValue().window.sum(now), Long::sum);
+            }
+        }
+        Set<String> names = new TreeSet<>(histograms.keySet());
+        names.addAll(errors.keySet());
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        double seconds = windowSeconds();
+        for (String command : names) {
+            stats.put(command, new Stats(command, histograms.getOrDefault(command, new LatencyHistogram()),
+                    recent.getOrDefault(command, 0L) / seconds, count(errors, command), count(timeouts, command)));
+        }
+        return stats;
+    }
+
+    @Override
+    public Map<String, Stats> getNodeStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        long now = Window.now();
+        double seconds = windowSeconds();
+        for (Map.Entry<SocketAddress, ConcurrentHashMap<String, Entry>> e : latencies.entrySet()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long recent = 0;
+            for (Entry entry : e.getValue().values()) {
+                histogram.add(entry.completion);
+                recent += entry.window.sum(now);
+            }
+            String node = node(e.getKey());
+            stats.put(node, new Stats(node, histogram, recent / seconds, 0, 0));
+        }
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        latencies.clear();
+        errors.clear();
+        timeouts.clear();
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * 吞吐量的统计时长：滑动窗口长度，统计周期不足一个窗口时为整个周期
+     */
+    private double windowSeconds() {
+        return Math.min(Window.SECONDS, Math.max(1, System.nanoTime() - startTime) / 1e9);
+    }
+
+    private static long sum(Map<String, LongAdder> counters) {
+        long sum = 0;
+        for (LongAdder counter : counters.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    private static long count(Map<String, LongAdder> counters, String command) {
+        LongAdder counter = counters.get(command);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    private static String node(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getHostString() + ":" + inet.getPort();
+        }
+        return String.valueOf(address);
+    }
+
+    private static class Entry {
+        final CommandLatencyId id;
+        final LatencyHistogram firstResponse = new LatencyHistogram();
+        final LatencyHistogram completion = new LatencyHistogram();
+        final Window window = new Window();
+
+        Entry(CommandLatencyId id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 按秒分桶的滑动窗口计数，每个桶记录所属的秒，过期的桶在下一次写入时清零
+     * <p>
+     * 换桶与同一秒内的其它自增并发时可能丢失几次计数，对吞吐量的影响可以忽略
+     * </p>
+     */
+    private static class Window {
+        static final int SECONDS = 60;
+        private static final long ORIGIN = System.nanoTime();
+
+        private final AtomicLongArray counts = new AtomicLongArray(SECONDS);
+        private final AtomicLongArray seconds = new AtomicLongArray(SECONDS);
+
+        Window() {
+            for (int i = 0; i < SECONDS; i++) {
+                seconds.set(i, -1);
+            }
+        }
+
+        static long now() {
+            return (System.nanoTime() - ORIGIN) / 1_000_000_000L;
+        }
+
+        void increment(long now) {
+            int i = (int) (now % SECONDS);
+            long second = seconds.get(i);
+            if (second != now && seconds.compareAndSet(i, second, now)) {
+                counts.set(i, 0);
+            }
+            counts.incrementAndGet(i);
+        }
+
+        long sum(long now) {
+            long sum = 0;
+            for (int i = 0; i < SECONDS; i++) {
+                long second = seconds.get(i);
+                if (second >= 0 && now - second < SECONDS) {
+                    sum += counts.get(i);
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * 一个命令或节点的统计快照，延迟单位为毫秒
+     */
+    public static class Stats {
+        private final String name;
+        private final long count;
+        private final double throughput;
+        private final double mean;
+        private final double p50;
+        private final double p99;
+        private final double p999;
+        private final double max;
+        private final long errors;
+        private final long timeouts;
+
+        Stats(String name, LatencyHistogram histogram, double throughput, long errors, long timeouts) {
+            this.name = name;
+            this.count = histogram.getCount();
+            this.throughput = throughput;
+            this.mean = histogram.getMean() / 1e6;
+            this.p50 = histogram.getPercentile(50) / 1e6;
+            this.p99 = histogram.getPercentile(99) / 1e6;
+            this.p999 = histogram.getPercentile(99.9) / 1e6;
+            this.max = histogram.getMax() / 1e6;
+            this.errors = errors;
+            this.timeouts = timeouts;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 最近60秒内每秒完成的命令数量
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * @return 失败数量，只有按命令汇总时有值
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return 超时数量，只有按命令汇总时有值
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s count=%d tps=%.1f mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms errors=%d timeouts=%d",
+                    name, count, throughput, mean, p50, p99, p999, max, errors, timeouts);
+        }
+    }
+
+}
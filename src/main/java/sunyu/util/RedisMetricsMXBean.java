@@ -0,0 +1,52 @@
+package sunyu.util;
+
+import java.util.Map;
+
+/**
+ * Redis 命令指标的 JMX 接口，见 {@link RedisMetrics}
+ *
+ * @author SunYu
+ */
+public interface RedisMetricsMXBean {
+
+    /**
+     * @return 已发出但还没有完成的命令数量
+     */
+    long getInFlight();
+
+    /**
+     * @return 统计周期内完成的命令数量
+     */
+    long getCommandCount();
+
+    /**
+     * @return 最近60秒（统计周期不足60秒时为整个周期）内每秒完成的命令数量
+     */
+    double getThroughput();
+
+    /**
+     * @return 失败的命令数量（包含超时）
+     */
+    long getErrorCount();
+
+    /**
+     * @return 超时的命令数量
+     */
+    long getTimeoutCount();
+
+    /**
+     * @return 按命令汇总的统计，键为命令名，例如 GET
+     */
+    Map<String, RedisMetrics.Stats> getCommandStats();
+
+    /**
+     * @return 按节点汇总的统计，键为节点地址，例如 127.0.0.1:6379
+     */
+    Map<String, RedisMetrics.Stats> getNodeStats();
+
+    /**
+     * 清空统计，开始新的统计周期
+     */
+    void reset();
+
+}
@@ -0,0 +1,97 @@
+package sunyu.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+
+/**
+ * 多个工具类实例共用的客户端资源（Netty 事件循环、计算线程池、定时器）
+ * <p>
+ * 每个工具类默认各自创建一套客户端资源，一个进程里连接多个库或集群时会有大量空闲线程。
+ * 构建器通过 sharedResources 指定同一个对象后，各实例共用一套线程数有上限的资源；
+ * 资源在第一个实例构建时创建，按引用计数在最后一个实例 close 时释放，之后再有实例构建会重新创建。
+ * </p>
+ *
+ * <pre>
+ *     SharedClientResources resources = new SharedClientResources(4, 4);
+ *     RedisUtil db0 = new RedisUtil.Builder().uri("redis://127.0.0.1:6379/0").sharedResources(resources).build();
+ *     RedisUtil db1 = new RedisUtil.Builder().uri("redis://127.0.0.1:6379/1").sharedResources(resources).build();
+ * </pre>
+ *
+ * @author SunYu
+ */
+public class SharedClientResources {
+    private static final Log log = LogFactory.get();
+    private static SharedClientResources defaultInstance;
+
+    private final int ioThreadPoolSize;
+    private final int computationThreadPoolSize;
+    private ClientResources resources;
+    private int references;
+
+    /**
+     * 进程内默认的共享资源，IO 线程和计算线程各为 CPU 核数的一半（至少2个）
+     *
+     * @return 共享资源
+     */
+    public static synchronized SharedClientResources getDefault() {
+        if (defaultInstance == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+            defaultInstance = new SharedClientResources(threads, threads);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * 创建共享资源，此时还不会创建线程
+     *
+     * @param ioThreadPoolSize          Netty IO 线程数
+     * @param computationThreadPoolSize 计算线程数
+     */
+    public SharedClientResources(int ioThreadPoolSize, int computationThreadPoolSize) {
+        this.ioThreadPoolSize = ioThreadPoolSize;
+        this.computationThreadPoolSize = computationThreadPoolSize;
+    }
+
+    /**
+     * 增加一个引用，没有资源时创建
+     *
+     * @return 客户端资源
+     */
+    synchronized ClientResources retain() {
+        if (resources == null) {
+            log.info("创建共享客户端资源，IO 线程数: {} 计算线程数: {}", ioThreadPoolSize, computationThreadPoolSize);
+            resources = DefaultClientResources.builder()
+                    .ioThreadPoolSize(ioThreadPoolSize)
+                    .computationThreadPoolSize(computationThreadPoolSize)
+                    .build();
+        }
+        references++;
+        return resources;
+    }
+
+    /**
+     * 减少一个引用，最后一个引用释放时关闭资源
+     */
+    synchronized void release() {
+        if (references == 0) {
+            return;
+        }
+        if (--references == 0) {
+            log.info("释放共享客户端资源");
+            resources.shutdown();
+            resources = null;
+        }
+    }
+
+    /**
+     * 获取正在使用的工具类实例数量
+     *
+     * @return 引用数量
+     */
+    public synchronized int getReferences() {
+        return references;
+    }
+
+}
@@ -0,0 +1,90 @@
+package sunyu.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个键的并发读取
+ * <p>
+ * 第一个线程执行读取，读取期间到达的同一个键的其他线程等待并共享它的结果（包括异常），读取结束后立即移除，
+ * 之后的调用重新执行。只在 ConcurrentHashMap 中按键放入一个 future，不同的键之间没有锁竞争。
+ * </p>
+ * <p>
+ * 热点键过期的瞬间，几百个线程同时 get 只会发出一个 GET；getOrLoad 的加载函数同样只执行一次。
+ * byte[] 类型的键按内容比较。
+ * </p>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<Object, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * 执行读取，同一个键已有读取在进行时等待它的结果
+     *
+     * @param key  键
+     * @param call 读取
+     * @return 值
+     */
+    public V execute(K key, Supplier<V> call) {
+        Object name = name(key);
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(name, future);
+        if (running != null) {
+            shared.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        executed.increment();
+        try {
+            V value = call.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(name, future);
+        }
+    }
+
+    /**
+     * @return 正在进行的读取数量
+     */
+    public int getInFlight() {
+        return calls.size();
+    }
+
+    /**
+     * @return 实际执行的读取次数
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return 共享其他线程结果、没有发出读取的次数
+     */
+    public long getSharedCount() {
+        return shared.sum();
+    }
+
+    private static Object name(Object key) {
+        return key instanceof byte[] ? ByteBuffer.wrap((byte[]) key) : key;
+    }
+
+}
@@ -0,0 +1,22 @@
+package sunyu.util;
+
+/**
+ * 工具类的启动方式
+ *
+ * @author SunYu
+ */
+public enum StartupMode {
+    /**
+     * 构建时同步建立连接，build() 返回时即可使用（默认）
+     */
+    EAGER,
+    /**
+     * 构建时不建立连接，第一次使用或调用 ready() 时再建立，适合需要快速启动的进程
+     */
+    LAZY,
+    /**
+     * 构建时在后台并行建立到所有主从节点的连接并发送 PING 预热，ready() 在预热完成后完成；
+     * 预热完成前发出的命令会等待连接建立
+     */
+    WARM_UP
+}
@@ -0,0 +1,429 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.*;
+import io.lettuce.core.api.sync.RedisStreamCommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Redis Streams 消费组引擎
+ * <p>
+ * 读取线程在一个独占连接上循环执行 XREADGROUP（COUNT/BLOCK），把消息交给工作线程池处理；
+ * 处理成功的消息攒批后用 XACK 确认，处理失败的消息不确认，留在待处理列表中。
+ * 后台线程定期用 XPENDING（按页翻完整个待处理列表）+ XCLAIM 认领空闲超过 claimIdle 的待处理消息（包括其它已下线消费者的），重新处理；
+ * 投递次数超过 maxDeliveries 的消息记录日志后直接确认，避免无法处理的消息无限重试。
+ * </p>
+ * <p>
+ * 未处理完的消息数有上限（count × workers × 2），工作线程跟不上时读取线程等待，不会无限堆积在内存中。
+ * BLOCK 时间需要小于命令超时（30秒）。
+ * </p>
+ *
+ * <pre>
+ *     StreamConsumer&lt;String, String&gt; consumer = redis.streamConsumer("events", "group", "consumer-1", message -&gt; {
+ *         // 处理 message.getBody()
+ *     }).count(100).workers(8).build();
+ *     ...
+ *     consumer.close();
+ * </pre>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class StreamConsumer<K, V> implements AutoCloseable {
+    private final Log log = LogFactory.get();
+    private final Config<K, V> config;
+    private final io.lettuce.core.Consumer<K> consumer;
+    private final Semaphore permits;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+    private final Thread reader;
+    private final ConcurrentLinkedQueue<String> acks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAcks = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private volatile boolean running = true;
+
+    StreamConsumer(Config<K, V> config) {
+        this.config = config;
+        this.consumer = io.lettuce.core.Consumer.from(config.group, config.consumer);
+        this.permits = new Semaphore(config.count * config.workers * 2);
+        log.info("[构建 {}] 开始", this.getClass().getSimpleName());
+        createGroup();
+        workers = Executors.newFixedThreadPool(config.workers, ThreadUtil.newNamedThreadFactory("redis-stream-worker-", true));
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("redis-stream-scheduler-", true));
+        scheduler.scheduleWithFixedDelay(this::flushAcks, config.ackInterval, config.ackInterval, TimeUnit.MILLISECONDS);
+        if (config.claimIdle > 0) {
+            scheduler.scheduleWithFixedDelay(this::claim, config.claimInterval, config.claimInterval, TimeUnit.MILLISECONDS);
+        }
+        reader = ThreadUtil.newNamedThreadFactory("redis-stream-reader-", true).newThread(this::readLoop);
+        reader.start();
+        log.info("[构建 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    /**
+     * 消费组不存在时创建，流不存在时同时创建流
+     */
+    private void createGroup() {
+        try {
+            config.redis.getCommands().xgroupCreate(StreamOffset.from(config.stream, config.groupOffset), config.group,
+                    XGroupCreateArgs.Builder.mkstream());
+            log.info("创建消费组 {}", config.group);
+        } catch (RedisCommandExecutionException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 读取线程：借用独占连接执行 XREADGROUP，连接出错时等待1秒后重新借用
+     */
+    private void readLoop() {
+        while (running) {
+            try {
+                config.redis.withConnection(commands -> {
+                    read(commands);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                if (running) {
+                    log.warn("读取消息失败 {}: {}", config.stream, e.getMessage());
+                    ThreadUtil.sleep(1000);
+                }
+            }
+        }
+    }
+
+    private void read(RedisStreamCommands<K, V> commands) {
+        XReadArgs args = XReadArgs.Builder.count(config.count).block(config.block);
+        StreamOffset<K> offset = StreamOffset.lastConsumed(config.stream);
+        while (running) {
+            try {
+                permits.acquire(config.count);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!running) {
+                permits.release(config.count);
+                return;
+            }
+            List<StreamMessage<K, V>> messages;
+            try {
+                messages = commands.xreadgroup(consumer, args, offset);
+            } catch (RuntimeException e) {
+                permits.release(config.count);
+                throw e;
+            }
+            permits.release(config.count - messages.size());
+            for (StreamMessage<K, V> message : messages) {
+                dispatch(message);
+            }
+        }
+    }
+
+    /**
+     * 交给工作线程处理，调用前已经占用一个许可
+     */
+    private void dispatch(StreamMessage<K, V> message) {
+        workers.execute(() -> {
+            try {
+                config.handler.accept(message);
+                processed.increment();
+                ack(message.getId());
+            } catch (Throwable e) {
+                failed.increment();
+                log.warn("处理消息失败 {} {}: {}", config.stream, message.getId(), e.getMessage());
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private void ack(String id) {
+        acks.add(id);
+        if (pendingAcks.incrementAndGet() >= config.ackBatch) {
+            flushAcks();
+        }
+    }
+
+    /**
+     * 把攒下的确认用一个 XACK 发送出去
+     *
+     * @return 发送结果
+     */
+    private CompletableFuture<Long> flushAcks() {
+        List<String> ids = new ArrayList<>();
+        String id;
+        while ((id = acks.poll()) != null) {
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        pendingAcks.addAndGet(-ids.size());
+        CompletableFuture<Long> future = config.redis.getAsyncCommands()
+                .xack(config.stream, config.group, ids.toArray(new String[0])).toCompletableFuture();
+        future.whenComplete((n, e) -> {
+            if (e != null) {
+                log.warn("确认消息失败 {} {} 条: {}", config.stream, ids.size(), e.getMessage());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 认领空闲超时的待处理消息
+     * <p>
+     * 从待处理列表开头按 count 条一页向后翻，直到翻完或没有空闲的许可；每条消息先用 tryAcquire 占用许可再认领，
+     * 工作线程跟不上时留给下一次检查，不阻塞同一线程上的 XACK 发送
+     * </p>
+     */
+    private void claim() {
+        try {
+            RedisStreamCommands<K, V> commands = config.redis.getCommands();
+            String start = "-";
+            while (running) {
+                List<PendingMessage> pending = commands.xpending(config.stream, config.group, Range.create(start, "+"),
+                        Limit.from(config.count));
+                List<String> ids = new ArrayList<>();
+                boolean full = false;
+                for (PendingMessage message : pending) {
+                    if (message.getMsSinceLastDelivery() < config.claimIdle) {
+                        continue;
+                    }
+                    if (config.maxDeliveries > 0 && message.getRedeliveryCount() > config.maxDeliveries) {
+                        log.warn("消息投递次数超过 {} 次，不再处理 {} {}", config.maxDeliveries, config.stream, message.getId());
+                        ack(message.getId());
+                    } else if (permits.tryAcquire()) {
+                        ids.add(message.getId());
+                    } else {
+                        full = true;
+                        break;
+                    }
+                }
+                if (!ids.isEmpty()) {
+                    claim(commands, ids);
+                }
+                if (full || pending.size() < config.count) {
+                    return;
+                }
+                start = nextId(pending.get(pending.size() - 1).getId());
+            }
+        } catch (RuntimeException e) {
+            log.warn("认领待处理消息失败 {}: {}", config.stream, e.getMessage());
+        }
+    }
+
+    /**
+     * 认领一页消息并交给工作线程，调用前已经为每条消息占用一个许可
+     */
+    private void claim(RedisStreamCommands<K, V> commands, List<String> ids) {
+        List<StreamMessage<K, V>> messages;
+        try {
+            messages = running ? commands.xclaim(config.stream, consumer, config.claimIdle, ids.toArray(new String[0]))
+                    : new ArrayList<>();
+        } catch (RuntimeException e) {
+            permits.release(ids.size());
+            throw e;
+        }
+        // 已被其它消费者认领的消息不会返回
+        int dispatched = 0;
+        for (StreamMessage<K, V> message : messages) {
+            if (message.getBody() == null || message.getBody().isEmpty()) {
+                // 已被 XDEL 删除的消息，直接确认
+                ack(message.getId());
+                continue;
+            }
+            claimed.increment();
+            dispatched++;
+            dispatch(message);
+        }
+        permits.release(ids.size() - dispatched);
+        if (dispatched > 0) {
+            log.info("认领待处理消息 {} {} 条", config.stream, dispatched);
+        }
+    }
+
+    /**
+     * 紧跟在 id 之后的消息 ID，用作下一页的起点
+     */
+    private static String nextId(String id) {
+        // 两部分都是无符号64位整数，序号用尽时进到下一毫秒
+        int dash = id.indexOf('-');
+        long ms = Long.parseUnsignedLong(id.substring(0, dash));
+        long seq = Long.parseUnsignedLong(id.substring(dash + 1)) + 1;
+        return seq == 0 ? Long.toUnsignedString(ms + 1) + "-0" : Long.toUnsignedString(ms) + "-" + Long.toUnsignedString(seq);
+    }
+
+    /**
+     * @return 处理成功的消息数量
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * @return 处理失败的消息数量
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 从待处理列表认领的消息数量
+     */
+    public long getClaimedCount() {
+        return claimed.sum();
+    }
+
+    /**
+     * 停止读取，等待已读取的消息处理完成并发送剩余的确认
+     */
+    @Override
+    public void close() {
+        log.info("[销毁 {}] 开始", this.getClass().getSimpleName());
+        running = false;
+        try {
+            reader.join(config.block + 5000);
+            workers.shutdown();
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+        try {
+            flushAcks().get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("确认消息失败 {}: {}", config.stream, e.getMessage());
+        }
+        log.info("[销毁 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    static class Config<K, V> {
+        private final AbstractRedisOperations<K, V, ?, ?> redis;
+        private final K stream;
+        private final K group;
+        private final K consumer;
+        private final Consumer<StreamMessage<K, V>> handler;
+        private String groupOffset = "0";
+        private int count = 100;
+        private long block = 2000;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int ackBatch = 100;
+        private long ackInterval = 100;
+        private long claimIdle = 60000;
+        private long claimInterval = 30000;
+        private long maxDeliveries;
+
+        Config(AbstractRedisOperations<K, V, ?, ?> redis, K stream, K group, K consumer, Consumer<StreamMessage<K, V>> handler) {
+            this.redis = redis;
+            this.stream = stream;
+            this.group = group;
+            this.consumer = consumer;
+            this.handler = handler;
+        }
+    }
+
+    public static class Builder<K, V> {
+        private final Config<K, V> config;
+
+        Builder(AbstractRedisOperations<K, V, ?, ?> redis, K stream, K group, K consumer, Consumer<StreamMessage<K, V>> handler) {
+            config = new Config<>(redis, stream, group, consumer, handler);
+        }
+
+        /**
+         * 消费组不存在时从哪里开始消费，默认 0 表示从头开始，$ 表示只消费新消息
+         *
+         * @param groupOffset 消息 ID
+         * @return 构建器
+         */
+        public Builder<K, V> groupOffset(String groupOffset) {
+            config.groupOffset = groupOffset;
+            return this;
+        }
+
+        /**
+         * 每次 XREADGROUP 最多读取的消息数量，默认100
+         *
+         * @param count 消息数量
+         * @return 构建器
+         */
+        public Builder<K, V> count(int count) {
+            config.count = count;
+            return this;
+        }
+
+        /**
+         * 没有新消息时 XREADGROUP 阻塞的时间(毫秒)，默认2000，需要小于命令超时
+         *
+         * @param block 阻塞时间
+         * @return 构建器
+         */
+        public Builder<K, V> block(long block) {
+            config.block = block;
+            return this;
+        }
+
+        /**
+         * 工作线程数，默认 CPU 核数
+         *
+         * @param workers 线程数
+         * @return 构建器
+         */
+        public Builder<K, V> workers(int workers) {
+            config.workers = workers;
+            return this;
+        }
+
+        /**
+         * 攒够多少条确认后发送一次 XACK，默认100；不足时每 ackInterval 毫秒发送一次
+         *
+         * @param ackBatch    每批确认数量
+         * @param ackInterval 发送间隔(毫秒)，默认100
+         * @return 构建器
+         */
+        public Builder<K, V> ack(int ackBatch, long ackInterval) {
+            config.ackBatch = ackBatch;
+            config.ackInterval = ackInterval;
+            return this;
+        }
+
+        /**
+         * 认领待处理消息
+         *
+         * @param claimIdle     空闲超过多少毫秒的待处理消息被认领，默认60000，0表示不认领
+         * @param claimInterval 检查间隔(毫秒)，默认30000
+         * @param maxDeliveries 投递次数超过多少次后不再处理，默认0表示不限
+         * @return 构建器
+         */
+        public Builder<K, V> claim(long claimIdle, long claimInterval, long maxDeliveries) {
+            config.claimIdle = claimIdle;
+            config.claimInterval = claimInterval;
+            config.maxDeliveries = maxDeliveries;
+            return this;
+        }
+
+        /**
+         * 创建消费者并立即开始消费
+         *
+         * @return 消费者
+         */
+        public StreamConsumer<K, V> build() {
+            return new StreamConsumer<>(config);
+        }
+    }
+
+}
@@ -0,0 +1,1143 @@
+package sunyu.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.*;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.async.RedisKeyAsyncCommands;
+import io.lettuce.core.api.sync.RedisKeyCommands;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import io.lettuce.core.cluster.event.ClusterTopologyChangedEvent;
+import io.lettuce.core.cluster.models.partitions.Partitions;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.cluster.pubsub.StatefulRedisClusterPubSubConnection;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.support.AsyncConnectionPoolSupport;
+import io.lettuce.core.support.BoundedAsyncPool;
+import io.lettuce.core.support.BoundedPoolConfig;
+import reactor.core.Disposable;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Redis 集群工具类，可指定编解码器
+ * <p>
+ * 键值类型由编解码器决定，例如使用 ByteArrayCodec 或 {@link ByteBufferCodec} 时值不经过字符集解码，
+ * 适合存放 protobuf、压缩数据等二进制内容。键值都是字符串时直接使用 {@link RedisClusterUtil}。
+ * </p>
+ *
+ * <pre>
+ *     TypedRedisClusterUtil&lt;byte[], byte[]&gt; redis = TypedRedisClusterUtil.builder(ByteArrayCodec.INSTANCE)
+ *             .nodes("192.168.11.124:7001,192.168.11.124:7002,192.168.11.124:7003")
+ *             .build();
+ * </pre>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class TypedRedisClusterUtil<K, V>
+        extends AbstractRedisOperations<K, V, RedisAdvancedClusterCommands<K, V>, RedisAdvancedClusterAsyncCommands<K, V>>
+        implements AutoCloseable {
+    private final Log log = LogFactory.get();
+    private final Config<K, V> config;
+
+    /**
+     * 创建构建器
+     *
+     * @param codec 编解码器
+     * @param <K>   Redis 键的类型
+     * @param <V>   Redis 值的类型
+     * @return 构建器
+     */
+    public static <K, V> Builder<K, V> builder(RedisCodec<K, V> codec) {
+        return new Builder<>(codec);
+    }
+
+    TypedRedisClusterUtil(Config<K, V> config) {
+        log.info("[构建 {}] 开始", this.getClass().getSimpleName());
+        // 分割逗号分隔的 URI 字符串，转换为 RedisURI 列表
+        List<RedisURI> redisURIs = new ArrayList<>();
+        for (String uri : config.uri.split(",")) {
+            redisURIs.add(RedisURI.create(uri.trim()));
+        }
+        log.info("Redis 集群节点: {}", redisURIs);
+        ClientResources shared = null;
+        if (config.sharedResources != null) {
+            log.info("使用共享客户端资源");
+            shared = config.sharedResources.retain();
+        }
+        try {
+            if (config.metrics) {
+                log.info("开启命令指标");
+                config.redisMetrics = new RedisMetrics(config.metricsName);
+            }
+            if (config.lowestLatency || config.hedgePercentile > 0) {
+                log.info("开启节点延迟跟踪");
+                config.nodeLatencies = new NodeLatencies(config.redisMetrics);
+                if (config.lowestLatency) {
+                    config.readFrom = config.nodeLatencies.readFrom();
+                }
+                if (config.hedgePercentile > 0) {
+                    log.info("开启对冲读取，分位: {} 最小等待: {}ms", config.hedgePercentile, config.hedgeMinDelay);
+                    config.hedgedReads = new HedgedReads(config.hedgePercentile, config.hedgeMinDelay);
+                }
+                config.resources = config.nodeLatencies.createClientResources(shared);
+                config.client = RedisClusterClient.create(config.resources, redisURIs);
+            } else if (config.redisMetrics != null) {
+                config.resources = config.redisMetrics.createClientResources(shared);
+                config.client = RedisClusterClient.create(config.resources, redisURIs);
+            } else if (shared != null) {
+                config.client = RedisClusterClient.create(shared, redisURIs);
+            } else {
+                config.client = RedisClusterClient.create(redisURIs);
+            }
+
+            log.info("构建集群拓扑刷新策略");
+            ClusterTopologyRefreshOptions topologyRefreshOptions = ClusterTopologyRefreshOptions.builder()
+                    // 周期性刷新（延长到10秒，减少集群压力）
+                    .enablePeriodicRefresh(Duration.ofSeconds(10))
+                    // 显式启用自适应刷新
+                    .enableAllAdaptiveRefreshTriggers()
+                    // 限制刷新频率
+                    .adaptiveRefreshTriggersTimeout(Duration.ofSeconds(30)) // 延长至30秒
+                    .build();
+
+            log.info("构建集群客户端选项");
+            log.info("命令超时，读: {}ms 写: {}ms 扫描: {}ms 阻塞: {}ms",
+                    config.readTimeout, config.writeTimeout, config.scanTimeout, config.blockingTimeout);
+            config.commandTimeouts = new CommandTimeouts(config.readTimeout, config.writeTimeout, config.scanTimeout, config.blockingTimeout);
+            ClusterClientOptions clusterClientOptions = ClusterClientOptions.builder()
+                    .topologyRefreshOptions(topologyRefreshOptions)
+                    // 命令超时按读、写、扫描、阻塞分别设置
+                    .timeoutOptions(TimeoutOptions.builder().timeoutCommands().timeoutSource(config.commandTimeouts).build())
+                    // Socket 配置（保持不变）
+                    .socketOptions(SocketOptions.builder()
+                            .connectTimeout(Duration.ofSeconds(5))
+                            .keepAlive(true)
+                            .tcpNoDelay(true)
+                            .build())
+                    // 断开行为（保持不变）
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .build();
+
+            config.client.setOptions(clusterClientOptions);
+
+            if (config.failureThreshold > 0) {
+                log.info("开启节点熔断，连续失败: {} 次 熔断时间: {}ms 最大在途命令数: {}",
+                        config.failureThreshold, config.openDuration, config.maxConcurrency);
+                config.circuitBreakers = new CircuitBreakers(config.failureThreshold, config.openDuration, config.maxConcurrency);
+                config.keyNodes = this::keyNode;
+            }
+
+            if (config.compressionThreshold > 0) {
+                log.info("开启值压缩，阈值: {} 字节", config.compressionThreshold);
+                config.codec = new CompressionCodec<>(config.codec, config.compressionThreshold);
+            }
+
+            if (config.nearCachePrefix != null) {
+                config.nearCache = new NearCache<>(config.codec, config.nearCachePrefix, config.nearCacheCapacity, config.nearCacheTtl);
+            }
+            if (config.singleFlightEnabled) {
+                config.singleFlight = new SingleFlight<>();
+            }
+            if (config.sampleRate > 0) {
+                log.info("开启热点键采样，采样率: {} 计数器数量: {}", config.sampleRate, config.sampleCapacity);
+                config.keySampler = new KeySampler(config.sampleRate, config.sampleCapacity);
+            }
+            this.config = config;
+
+            log.info("启动方式: {}", config.startupMode);
+            start(config.startupMode);
+        } catch (RuntimeException e) {
+            // 构建失败时关闭已创建的客户端，归还共享资源的引用
+            shutdown(config);
+            throw e;
+        }
+        log.info("[构建 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void connect() {
+        log.info("建立集群连接，连接数: {} 选择策略: {}", config.connectionCount, config.striping);
+        log.info("设置读取策略: {}", config.readFrom);
+        config.stripes = new ConnectionStripes(config.connectionCount, config.striping);
+        for (int i = 0; i < config.connectionCount; i++) {
+            StatefulRedisClusterConnection<K, V> connection = config.client.connect(config.codec);
+            connection.setReadFrom(config.readFrom);
+
+            RedisAdvancedClusterCommands<K, V> commands = config.stripes.track(i, RedisAdvancedClusterCommands.class, connection.sync());
+            RedisAdvancedClusterAsyncCommands<K, V> asyncCommands = config.stripes.track(i, RedisAdvancedClusterAsyncCommands.class, connection.async());
+            commands = guard(RedisAdvancedClusterCommands.class, commands);
+            asyncCommands = guard(RedisAdvancedClusterAsyncCommands.class, asyncCommands);
+            config.connections.add(connection);
+            config.commands.add(commands);
+            config.asyncCommands.add(asyncCommands);
+        }
+
+        // 独占连接池，阻塞命令借用，连接默认读写主节点
+        config.leasePool = AsyncConnectionPoolSupport.createBoundedObjectPool(
+                () -> config.client.connectAsync(config.codec),
+                BoundedPoolConfig.builder()
+                        .maxTotal(config.maxLeasedConnections)
+                        .maxIdle(config.maxLeasedConnections)
+                        .minIdle(0)
+                        .build());
+
+        // 对冲连接按延迟把第二快的节点排在最前面
+        if (config.hedgedReads != null) {
+            config.hedgeConnection = config.client.connect(config.codec);
+            config.hedgeConnection.setReadFrom(config.nodeLatencies.readFrom(1));
+        }
+
+        if (config.nearCache != null) {
+            subscribeNearCache(config);
+        }
+
+        // 把已注册的脚本加载到所有主节点，拓扑变化（扩容、故障转移）后重新加载
+        for (LuaScript script : getScripts()) {
+            preloadScript(script);
+        }
+        config.topologySubscription = config.client.getResources().eventBus().get()
+                .filter(event -> event instanceof ClusterTopologyChangedEvent)
+                .subscribe(event -> {
+                    for (LuaScript script : getScripts()) {
+                        preloadScript(script);
+                    }
+                    if (config.pipelineConnection != null) {
+                        // 事件线程不能阻塞，在其它线程上等待预热
+                        CompletableFuture.runAsync(() -> lockPipeline(() -> warmUpPipeline(config.pipelineConnection)));
+                    }
+                });
+    }
+
+    /**
+     * 在每个集群连接上并行预热
+     * <p>
+     * 对拓扑中的每个主从节点取得节点连接并发送 PING；再对每个主节点发送一个落在其槽位上的只读命令，
+     * 按读取策略建立到从节点的读连接（读连接与按节点取得的连接不是同一个）
+     * </p>
+     */
+    @Override
+    protected void warmUp() {
+        log.info("预热集群连接");
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (StatefulRedisClusterConnection<K, V> connection : config.connections) {
+            futures.addAll(warmUp(connection));
+        }
+        join(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])));
+        log.info("预热完成，节点数: {}", config.connections.get(0).getPartitions().size());
+    }
+
+    /**
+     * 在一个集群连接上向每个主从节点发送 PING，向每个主节点的槽位发送一个只读命令
+     *
+     * @param connection 集群连接
+     * @return 各命令的结果
+     */
+    @SuppressWarnings("unchecked")
+    private List<CompletableFuture<?>> warmUp(StatefulRedisClusterConnection<K, V> connection) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (RedisClusterNode node : connection.getPartitions()) {
+            futures.add(connection.getConnectionAsync(node.getNodeId()).thenCompose(c -> c.async().ping()));
+            if (!node.getSlots().isEmpty()) {
+                futures.add(connection.async().exists(warmUpKey(node)).toCompletableFuture());
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * 预热批量执行专用连接
+     * <p>
+     * 该连接关闭了自动发送，发给还在建立中的节点连接的命令会错过 flushCommands，一直等到下一次发送或超时，
+     * 因此在建立时和拓扑变化后临时打开自动发送，把所有节点连接（包括按读取策略使用的读连接）建立好再关闭
+     * </p>
+     *
+     * @param connection 批量执行专用连接
+     */
+    private void warmUpPipeline(StatefulRedisClusterConnection<K, V> connection) {
+        connection.setAutoFlushCommands(true);
+        try {
+            join(CompletableFuture.allOf(warmUp(connection).toArray(new CompletableFuture[0])));
+        } catch (RuntimeException e) {
+            log.warn("预热批量执行专用集群连接失败: {}", e.getMessage());
+        } finally {
+            connection.setAutoFlushCommands(false);
+        }
+    }
+
+    /**
+     * 找一个槽位属于该节点的键
+     */
+    private K warmUpKey(RedisClusterNode node) {
+        for (int i = 0; ; i++) {
+            String key = "warmup:" + i;
+            if (node.hasSlot(SlotHash.getSlot(key))) {
+                return config.codec.decodeKey(StringCodec.UTF8.encodeKey(key));
+            }
+        }
+    }
+
+    static class Config<K, V> {
+        private String uri;
+        private RedisClusterClient client;
+        private StartupMode startupMode = StartupMode.EAGER;
+        private int connectionCount = 1;
+        private ConnectionStriping striping = ConnectionStriping.ROUND_ROBIN;
+        private ConnectionStripes stripes;
+        private final List<StatefulRedisClusterConnection<K, V>> connections = new ArrayList<>();
+        private final List<RedisAdvancedClusterCommands<K, V>> commands = new ArrayList<>();
+        private final List<RedisAdvancedClusterAsyncCommands<K, V>> asyncCommands = new ArrayList<>();
+        private int maxLeasedConnections = DEFAULT_MAX_LEASED_CONNECTIONS;
+        private BoundedAsyncPool<StatefulRedisClusterConnection<K, V>> leasePool;
+        private volatile StatefulRedisClusterConnection<K, V> pipelineConnection;
+        private RedisCodec<K, V> codec;
+        private int compressionThreshold;
+        private int mgetChunkSize = DEFAULT_MGET_CHUNK_SIZE;
+        private String nearCachePrefix;
+        private int nearCacheCapacity;
+        private long nearCacheTtl;
+        private NearCache<K, V> nearCache;
+        private StatefulRedisClusterPubSubConnection<String, String> nearCachePubSub;
+        private boolean singleFlightEnabled;
+        private SingleFlight<K, V> singleFlight;
+        private double sampleRate;
+        private int sampleCapacity;
+        private KeySampler keySampler;
+        private Disposable topologySubscription;
+        private ReadFrom readFrom = ReadFrom.REPLICA_PREFERRED;
+        private boolean lowestLatency;
+        private double hedgePercentile;
+        private long hedgeMinDelay;
+        private NodeLatencies nodeLatencies;
+        private HedgedReads hedgedReads;
+        private StatefulRedisClusterConnection<K, V> hedgeConnection;
+        private final Map<ReadFrom, StatefulRedisClusterConnection<K, V>> readConnections = new ConcurrentHashMap<>();
+        private long readTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long writeTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long scanTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long blockingTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private CommandTimeouts commandTimeouts;
+        private int failureThreshold;
+        private long openDuration;
+        private int maxConcurrency;
+        private CircuitBreakers circuitBreakers;
+        private Function<Object, String> keyNodes;
+        private boolean metrics;
+        private String metricsName;
+        private RedisMetrics redisMetrics;
+        private ClientResources resources;
+        private SharedClientResources sharedResources;
+
+        Config(RedisCodec<K, V> codec) {
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * 构建器公共部分
+     *
+     * @param <K> Redis 键的类型
+     * @param <V> Redis 值的类型
+     * @param <B> 构建器自身类型
+     */
+    public abstract static class AbstractBuilder<K, V, B extends AbstractBuilder<K, V, B>> {
+        final Config<K, V> config;
+
+        AbstractBuilder(RedisCodec<K, V> codec) {
+            config = new Config<>(codec);
+        }
+
+        @SuppressWarnings("unchecked")
+        private B self() {
+            return (B) this;
+        }
+
+        /**
+         * 设置链接
+         *
+         * <pre>
+         *     redis :// [[username :] password@] host [:port][/database]
+         *           [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&clientName=clientName]
+         *           [&libraryName=libraryName] [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *     rediss :// [[username :] password@] host [: port][/database]
+         *            [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&clientName=clientName]
+         *            [&libraryName=libraryName] [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *     redis-socket :// [[username :] password@]path
+         *                  [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&database=database]
+         *                  [&clientName=clientName] [&libraryName=libraryName]
+         *                  [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *      redis://192.168.11.124:7001,redis://192.168.11.124:7002,redis://192.168.11.124:7003,redis://192.168.11.125:7004,redis://192.168.11.125:7005,redis://192.168.11.125:7006
+         * </pre>
+         *
+         * @param uri 链接
+         * @return 构建器
+         */
+        public B uri(String uri) {
+            config.uri = uri;
+            return self();
+        }
+
+        /**
+         * 设置节点
+         *
+         * <pre>
+         *      192.168.11.124:7001,192.168.11.124:7002,192.168.11.124:7003,192.168.11.125:7004,192.168.11.125:7005,192.168.11.125:7006
+         * </pre>
+         *
+         * @param nodes 节点
+         * @return 构建器
+         */
+        public B nodes(String nodes) {
+            StringBuilder uriBuilder = new StringBuilder();
+            for (String node : nodes.split(",")) {
+                uriBuilder.append("redis://").append(node.trim()).append(",");
+            }
+            config.uri = uriBuilder.substring(0, uriBuilder.length() - 1);
+            return self();
+        }
+
+        /**
+         * 设置批量获取值时每个 MGET 命令最多包含的键数量，默认500
+         * <p>
+         * 集群模式下键先按槽位分组，每个槽位的键再按此数量拆分
+         * </p>
+         *
+         * @param mgetChunkSize 键数量
+         * @return 构建器
+         */
+        public B mgetChunkSize(int mgetChunkSize) {
+            config.mgetChunkSize = mgetChunkSize;
+            return self();
+        }
+
+        /**
+         * 开启值压缩
+         * <p>
+         * 编码后达到阈值的值使用 Deflate 压缩后再写入，读取时自动解压；
+         * 压缩前写入的旧值没有压缩头部，仍可正常读取，详见 {@link CompressionCodec}
+         * </p>
+         *
+         * @param threshold 压缩阈值(字节)，建议4096
+         * @return 构建器
+         */
+        public B compression(int threshold) {
+            config.compressionThreshold = threshold;
+            return self();
+        }
+
+        /**
+         * 开启近端缓存
+         * <p>
+         * get、mget 读取以 keyPrefix 开头的键时优先使用本地缓存，
+         * 需要在每个节点上开启键空间通知，例如 CONFIG SET notify-keyspace-events KA
+         * </p>
+         *
+         * @param keyPrefix 键前缀，例如 farm:realtime:
+         * @param capacity  最大缓存数量
+         * @param ttl       存活时间(毫秒)，0表示不过期
+         * @return 构建器
+         */
+        public B nearCache(String keyPrefix, int capacity, long ttl) {
+            config.nearCachePrefix = keyPrefix;
+            config.nearCacheCapacity = capacity;
+            config.nearCacheTtl = ttl;
+            return self();
+        }
+
+        /**
+         * 开启读取合并，同一个键的并发 get 只发出一个 GET，其他线程等待并共享结果，见 {@link SingleFlight}
+         *
+         * @return 构建器
+         */
+        public B singleFlight() {
+            config.singleFlightEnabled = true;
+            return self();
+        }
+
+        /**
+         * 开启热点键和大键采样，见 {@link KeySampler}
+         *
+         * @param rate     采样率，例如 0.01
+         * @param capacity 每个维度保存的计数器数量，例如 1000
+         * @return 构建器
+         */
+        public B keySampler(double rate, int capacity) {
+            config.sampleRate = rate;
+            config.sampleCapacity = capacity;
+            return self();
+        }
+
+        /**
+         * 设置启动方式，默认构建时同步建立连接，见 {@link StartupMode}
+         *
+         * @param startupMode 启动方式
+         * @return 构建器
+         */
+        public B startup(StartupMode startupMode) {
+            config.startupMode = startupMode;
+            return self();
+        }
+
+        /**
+         * 设置普通命令使用的连接数，默认1
+         * <p>
+         * 多个线程共用一个连接时，大值传输或慢命令会拖慢排在后面的所有调用，多连接可以分散这种影响
+         * </p>
+         *
+         * @param connectionCount 连接数
+         * @return 构建器
+         */
+        public B connections(int connectionCount) {
+            config.connectionCount = connectionCount;
+            return self();
+        }
+
+        /**
+         * 设置多连接时的选择策略，默认轮流使用
+         *
+         * @param striping 选择策略
+         * @return 构建器
+         */
+        public B striping(ConnectionStriping striping) {
+            config.striping = striping;
+            return self();
+        }
+
+        /**
+         * 设置 withConnection 独占连接池的最大连接数，默认8
+         *
+         * @param maxLeasedConnections 最大连接数
+         * @return 构建器
+         */
+        public B maxLeasedConnections(int maxLeasedConnections) {
+            config.maxLeasedConnections = maxLeasedConnections;
+            return self();
+        }
+
+        /**
+         * 设置读命令的读取策略，默认 ReadFrom.REPLICA_PREFERRED，
+         * 例如 ReadFrom.MASTER、ReadFrom.NEAREST 或按机房选择的 {@link ZoneReadFrom}
+         *
+         * @param readFrom 读取策略
+         * @return 构建器
+         */
+        public B readFrom(ReadFrom readFrom) {
+            config.readFrom = readFrom;
+            return self();
+        }
+
+        /**
+         * 按各节点最近的命令延迟选择读取节点
+         * <p>
+         * 每个节点按最近命令延迟的指数加权平均从低到高排序，主从节点都参与，排在最前面的可用节点执行读命令，见 {@link NodeLatencies}；
+         * 从未有过记录的节点视为延迟为0，排在最前面探测一次；超过1秒没有更新的节点保留最后的平均延迟并逐渐衰减，延迟相同的节点保持拓扑中的顺序
+         * </p>
+         * <p>
+         * 集群连接按槽位缓存选择结果，工具类每秒最多重新设置一次读取策略，让各槽位按当前延迟重新排序选择，
+         * 重新选择前用 PING 探测没有被选中的节点
+         * </p>
+         *
+         * @return 构建器
+         */
+        public B readFromLowestLatency() {
+            config.lowestLatency = true;
+            return self();
+        }
+
+        /**
+         * 开启对冲读取，get 和 hedgedRead 超过阈值未返回时在延迟第二低的节点上再读一次，见 {@link HedgedReads}
+         *
+         * @param percentile 触发对冲的延迟分位，例如 95
+         * @param minDelay   最小等待时间(毫秒)
+         * @return 构建器
+         */
+        public B hedge(double percentile, long minDelay) {
+            config.hedgePercentile = percentile;
+            config.hedgeMinDelay = minDelay;
+            return self();
+        }
+
+        /**
+         * 读命令（GET、HMGET 等）的超时时间，默认30秒
+         *
+         * @param readTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B readTimeout(long readTimeout) {
+            config.readTimeout = readTimeout;
+            return self();
+        }
+
+        /**
+         * 写命令和其它命令的超时时间，默认30秒
+         *
+         * @param writeTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B writeTimeout(long writeTimeout) {
+            config.writeTimeout = writeTimeout;
+            return self();
+        }
+
+        /**
+         * SCAN、HSCAN 等扫描命令的超时时间，默认30秒
+         *
+         * @param scanTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B scanTimeout(long scanTimeout) {
+            config.scanTimeout = scanTimeout;
+            return self();
+        }
+
+        /**
+         * BLPOP、XREADGROUP 等阻塞命令的超时时间，需大于命令自身的阻塞时间，默认30秒
+         *
+         * @param blockingTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B blockingTimeout(long blockingTimeout) {
+            config.blockingTimeout = blockingTimeout;
+            return self();
+        }
+
+        /**
+         * 开启按节点的熔断和并发限制，一个故障节点上的命令立即失败，不占用调用线程，见 {@link CircuitBreakers}
+         *
+         * @param failureThreshold 连续超时或连接失败多少次后熔断
+         * @param openDuration     熔断时间(毫秒)，之后放行一个试探命令
+         * @param maxConcurrency   每个节点的最大在途命令数，0表示不限制
+         * @return 构建器
+         */
+        public B circuitBreaker(int failureThreshold, long openDuration, int maxConcurrency) {
+            config.failureThreshold = failureThreshold;
+            config.openDuration = openDuration;
+            config.maxConcurrency = maxConcurrency;
+            return self();
+        }
+
+        /**
+         * 使用共享的客户端资源，多个实例共用一套事件循环和计算线程，最后一个实例关闭时释放
+         *
+         * @param sharedResources 共享资源
+         * @return 构建器
+         */
+        public B sharedResources(SharedClientResources sharedResources) {
+            config.sharedResources = sharedResources;
+            return self();
+        }
+
+        /**
+         * 使用进程内默认的共享客户端资源，见 {@link SharedClientResources#getDefault()}
+         *
+         * @return 构建器
+         */
+        public B sharedResources() {
+            return sharedResources(SharedClientResources.getDefault());
+        }
+
+        /**
+         * 开启命令指标，统计每个命令和节点的延迟分布、吞吐量、失败数、超时数和在途命令数，见 {@link RedisMetrics}
+         *
+         * @return 构建器
+         */
+        public B metrics() {
+            config.metrics = true;
+            return self();
+        }
+
+        /**
+         * 开启命令指标并注册到 JMX，ObjectName 为 sunyu.util:type=RedisMetrics,name=名称
+         *
+         * @param name 名称，同一进程内不能重复
+         * @return 构建器
+         */
+        public B metrics(String name) {
+            config.metrics = true;
+            config.metricsName = name;
+            return self();
+        }
+    }
+
+    public static class Builder<K, V> extends AbstractBuilder<K, V, Builder<K, V>> {
+        Builder(RedisCodec<K, V> codec) {
+            super(codec);
+        }
+
+        public TypedRedisClusterUtil<K, V> build() {
+            return new TypedRedisClusterUtil<>(config);
+        }
+    }
+
+    /**
+     * 回收资源
+     */
+    @Override
+    public void close() {
+        log.info("[销毁 {}] 开始", this.getClass().getSimpleName());
+        if (config.pipelineConnection != null) {
+            config.pipelineConnection.close();
+        }
+        if (config.nearCachePubSub != null) {
+            config.nearCachePubSub.close();
+        }
+        if (config.topologySubscription != null) {
+            config.topologySubscription.dispose();
+        }
+        if (config.leasePool != null) {
+            config.leasePool.close();
+        }
+        if (config.hedgeConnection != null) {
+            config.hedgeConnection.close();
+        }
+        for (StatefulRedisClusterConnection<K, V> connection : config.readConnections.values()) {
+            connection.close();
+        }
+        for (StatefulRedisClusterConnection<K, V> connection : config.connections) {
+            connection.close();
+        }
+        shutdown(config);
+        log.info("[销毁 {}] 开始", this.getClass().getSimpleName());
+    }
+
+    /**
+     * 关闭客户端和客户端资源
+     * <p>
+     * 使用共享资源时，开启指标或延迟跟踪创建的资源是共享资源的副本，与其共用事件循环、计算线程和定时器，
+     * 不能单独关闭，只归还共享资源的引用
+     * </p>
+     */
+    private static void shutdown(Config<?, ?> config) {
+        if (config.client != null) {
+            config.client.shutdown();
+        }
+        if (config.hedgedReads != null) {
+            config.hedgedReads.close();
+        }
+        if (config.resources != null && config.sharedResources == null) {
+            config.resources.shutdown();
+        }
+        if (config.redisMetrics != null) {
+            config.redisMetrics.shutdown();
+        }
+        if (config.sharedResources != null) {
+            config.sharedResources.release();
+        }
+    }
+
+    /**
+     * 获取同步命令对象，开启多连接时按选择策略从连接组中选择
+     *
+     * @return
+     */
+    public RedisAdvancedClusterCommands<K, V> getCommands() {
+        ensureConnected();
+        reselectReaders();
+        return config.commands.get(config.stripes.next());
+    }
+
+    /**
+     * 每个主节点一个扫描目标，各节点的游标互相独立，可以并行扫描
+     *
+     * @return 主节点命令对象
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<RedisKeyCommands<K, V>> getScanTargets() {
+        List<RedisKeyCommands<K, V>> targets = new ArrayList<>();
+        getCommands().masters().asMap().forEach((node, commands) ->
+                targets.add(guardNode(RedisKeyCommands.class, commands, nodeName(node))));
+        return targets;
+    }
+
+    /**
+     * 在所有主节点上加载脚本
+     *
+     * @param script 脚本
+     * @return 加载结果
+     */
+    @Override
+    protected CompletableFuture<?> loadScript(LuaScript script) {
+        return getAsyncCommands().masters().commands().scriptLoad(script.getSource()).toCompletableFuture();
+    }
+
+    /**
+     * 集群的 EVALSHA 按键路由到不同主节点，注册时就加载到所有主节点
+     *
+     * @param script 脚本
+     */
+    @Override
+    protected void preloadScript(LuaScript script) {
+        loadScript(script).whenComplete((v, e) -> {
+            if (e != null) {
+                log.warn("加载脚本失败 {}: {}", script.getSha(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 每个主节点一个异步扫描目标
+     *
+     * @return 主节点异步命令对象
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<RedisKeyAsyncCommands<K, V>> getAsyncScanTargets() {
+        List<RedisKeyAsyncCommands<K, V>> targets = new ArrayList<>();
+        getAsyncCommands().masters().asMap().forEach((node, commands) ->
+                targets.add(guardNode(RedisKeyAsyncCommands.class, commands, nodeName(node))));
+        return targets;
+    }
+
+    /**
+     * 获取异步命令对象，开启多连接时按选择策略从连接组中选择
+     *
+     * @return
+     */
+    @Override
+    public RedisAdvancedClusterAsyncCommands<K, V> getAsyncCommands() {
+        ensureConnected();
+        reselectReaders();
+        return config.asyncCommands.get(config.stripes.next());
+    }
+
+    /**
+     * 按延迟选择读取节点时，重新设置读取策略让集群连接清空按槽位缓存的读取节点，每秒最多一次
+     * <p>
+     * 没有被选中的节点分不到读取，重新选择前向超过1秒没有延迟记录的节点发送 PING，让下一次选择有最新的延迟
+     * </p>
+     */
+    private void reselectReaders() {
+        if (config.nodeLatencies != null && config.nodeLatencies.reselect()) {
+            StatefulRedisClusterConnection<K, V> probe = config.connections.get(0);
+            for (RedisClusterNode node : probe.getPartitions()) {
+                if (config.nodeLatencies.isStale(node.getUri())) {
+                    probe.getConnectionAsync(node.getNodeId()).thenCompose(c -> c.async().ping());
+                }
+            }
+            for (StatefulRedisClusterConnection<K, V> connection : config.connections) {
+                connection.setReadFrom(config.readFrom);
+            }
+            if (config.pipelineConnection != null) {
+                config.pipelineConnection.setReadFrom(config.readFrom);
+            }
+            if (config.hedgeConnection != null) {
+                config.hedgeConnection.setReadFrom(config.hedgeConnection.getReadFrom());
+            }
+        }
+    }
+
+    @Override
+    public RedisAdvancedClusterCommands<K, V> getCommands(ReadFrom readFrom) {
+        RedisAdvancedClusterCommands<K, V> commands = readConnection(readFrom).sync();
+        return guard(RedisAdvancedClusterCommands.class, commands);
+    }
+
+    @Override
+    public RedisAdvancedClusterAsyncCommands<K, V> getAsyncCommands(ReadFrom readFrom) {
+        RedisAdvancedClusterAsyncCommands<K, V> commands = readConnection(readFrom).async();
+        return guard(RedisAdvancedClusterAsyncCommands.class, commands);
+    }
+
+    private StatefulRedisClusterConnection<K, V> readConnection(ReadFrom readFrom) {
+        ensureConnected();
+        StatefulRedisClusterConnection<K, V> connection = config.readConnections.get(readFrom);
+        if (connection == null) {
+            synchronized (config) {
+                connection = config.readConnections.get(readFrom);
+                if (connection == null) {
+                    log.info("建立读取策略为 {} 的集群连接", readFrom);
+                    connection = config.client.connect(config.codec);
+                    connection.setReadFrom(readFrom);
+                    config.readConnections.put(readFrom, connection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    protected RedisAdvancedClusterAsyncCommands<K, V> getHedgeCommands() {
+        ensureConnected();
+        RedisAdvancedClusterAsyncCommands<K, V> commands = config.hedgeConnection.async();
+        return config.redisMetrics == null ? commands : config.redisMetrics.wrap(RedisAdvancedClusterAsyncCommands.class, commands);
+    }
+
+    @Override
+    public HedgedReads getHedgedReads() {
+        return config.hedgedReads;
+    }
+
+    @Override
+    public NodeLatencies getNodeLatencies() {
+        return config.nodeLatencies;
+    }
+
+    /**
+     * 借用一个独占连接执行操作，适合 BLPOP 等阻塞命令和大值传输
+     * <p>
+     * 连接来自独占连接池，读写都走主节点，操作结束后归还，连接池已满时等待其它操作归还连接。
+     * 集群连接不支持跨节点的 MULTI/EXEC 事务。
+     * </p>
+     *
+     * @param action 使用同步命令对象的操作
+     * @param <R>    结果类型
+     * @return 操作结果
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R withConnection(Function<RedisAdvancedClusterCommands<K, V>, R> action) {
+        ensureConnected();
+        StatefulRedisClusterConnection<K, V> connection = join(config.leasePool.acquire());
+        try {
+            RedisAdvancedClusterCommands<K, V> commands = connection.sync();
+            commands = guard(RedisAdvancedClusterCommands.class, commands);
+            return action.apply(commands);
+        } finally {
+            config.leasePool.release(connection);
+        }
+    }
+
+    /**
+     * 在所有主节点上订阅键空间通知，驱动近端缓存失效
+     * <p>
+     * 键空间通知只在键所在的节点上发布，开启节点消息传播后各节点的通知都会交给同一个监听器，
+     * 通知连接固定使用字符串编解码器，频道名中的键按字符串交给近端缓存；
+     * 任意连接断开或重连时清空近端缓存，因为期间的通知可能已经丢失
+     * </p>
+     */
+    private void subscribeNearCache(Config<K, V> config) {
+        NearCache<K, V> nearCache = config.nearCache;
+        log.info("开启近端缓存，键前缀: {}", nearCache.getKeyPrefix());
+        config.client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                nearCache.invalidateAll();
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+                nearCache.invalidateAll();
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+            }
+        });
+        config.nearCachePubSub = config.client.connectPubSub(StringCodec.UTF8);
+        config.nearCachePubSub.setNodeMessagePropagation(true);
+        config.nearCachePubSub.addListener(new RedisPubSubAdapter<String, String>() {
+            @Override
+            public void message(String pattern, String channel, String message) {
+                // __keyspace@0__:farm:realtime:600044
+                nearCache.invalidate(channel.substring(channel.indexOf("__:") + 3));
+            }
+        });
+        config.nearCachePubSub.sync().masters().commands()
+                .psubscribe("__keyspace@*__:" + nearCache.getKeyPrefix() + "*");
+    }
+
+    /**
+     * 获取批量执行专用连接的异步命令对象，首次调用时建立连接
+     * <p>
+     * 集群连接关闭自动发送后，其下所有节点连接同样关闭自动发送，flushCommands 会发送所有节点上排队的命令；
+     * 建立时和拓扑变化后预热所有节点连接，见 {@link #warmUpPipeline(StatefulRedisClusterConnection)}
+     * </p>
+     *
+     * @return 异步命令对象
+     */
+    @Override
+    protected RedisAdvancedClusterAsyncCommands<K, V> getPipelineCommands() {
+        ensureConnected();
+        if (config.pipelineConnection == null) {
+            synchronized (config) {
+                if (config.pipelineConnection == null) {
+                    log.info("建立批量执行专用集群连接");
+                    StatefulRedisClusterConnection<K, V> connection = config.client.connect(config.codec);
+                    connection.setReadFrom(config.readFrom);
+                    warmUpPipeline(connection);
+                    config.pipelineConnection = connection;
+                }
+            }
+        }
+        reselectReaders();
+        RedisAdvancedClusterAsyncCommands<K, V> commands = config.pipelineConnection.async();
+        return guard(RedisAdvancedClusterAsyncCommands.class, commands);
+    }
+
+    @Override
+    protected RedisCodec<K, V> getCodec() {
+        return config.codec;
+    }
+
+    @Override
+    public NearCache<K, V> getNearCache() {
+        return config.nearCache;
+    }
+
+    @Override
+    public SingleFlight<K, V> getSingleFlight() {
+        return config.singleFlight;
+    }
+
+    @Override
+    public KeySampler getKeySampler() {
+        return config.keySampler;
+    }
+
+    /**
+     * 每个主节点一个命令对象
+     *
+     * @return 节点名称和命令对象
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<String, RedisAsyncCommands<K, V>> getNodeCommands() {
+        Map<String, RedisAsyncCommands<K, V>> nodes = new LinkedHashMap<>();
+        getAsyncCommands().masters().asMap().forEach((node, commands) -> {
+            String name = nodeName(node);
+            nodes.put(name, guardNode(RedisAsyncCommands.class, commands, name));
+        });
+        return nodes;
+    }
+
+    /**
+     * 包装命令对象，开启熔断时先经过节点熔断，再统计命令指标
+     */
+    private <C> C guard(Class<C> type, C commands) {
+        if (config.circuitBreakers != null) {
+            commands = config.circuitBreakers.wrap(type, commands, config.keyNodes);
+        }
+        return config.redisMetrics == null ? commands : config.redisMetrics.wrap(type, commands);
+    }
+
+    /**
+     * 包装按节点执行的命令对象（SCAN、按节点导出等），与 guard 相同，但熔断固定使用该节点，不看命令的键
+     */
+    private <C> C guardNode(Class<C> type, C commands, String node) {
+        if (config.circuitBreakers != null) {
+            commands = config.circuitBreakers.wrap(type, commands, key -> node);
+        }
+        return config.redisMetrics == null ? commands : config.redisMetrics.wrap(type, commands);
+    }
+
+    private static String nodeName(RedisClusterNode node) {
+        return node.getUri().getHost() + ":" + node.getUri().getPort();
+    }
+
+    /**
+     * 键所在槽位的主节点名称，没有键时不经过熔断
+     */
+    @SuppressWarnings("unchecked")
+    private String keyNode(Object key) {
+        if (key == null) {
+            return null;
+        }
+        // dispatch 的参数只有编码后的键
+        ByteBuffer encoded = key instanceof ByteBuffer ? ((ByteBuffer) key).duplicate() : config.codec.encodeKey((K) key);
+        RedisClusterNode node = config.client.getPartitions().getPartitionBySlot(SlotHash.getSlot(encoded));
+        return node == null ? null : nodeName(node);
+    }
+
+    @Override
+    public CommandTimeouts getCommandTimeouts() {
+        return config.commandTimeouts;
+    }
+
+    @Override
+    public CircuitBreakers getCircuitBreakers() {
+        return config.circuitBreakers;
+    }
+
+    @Override
+    public RedisMetrics getMetrics() {
+        return config.redisMetrics;
+    }
+
+    @Override
+    protected int getMgetChunkSize() {
+        return config.mgetChunkSize;
+    }
+
+    /**
+     * 先按所属主节点、再按槽位分组，每个槽位的键再按 chunkSize 拆分
+     * <p>
+     * 每组键属于同一个槽位，发出的 MGET 由集群连接直接路由到该槽位所属的节点，不再经过跨槽位拆分；
+     * 同一节点的分组在结果中相邻，依次发出时同一节点的命令连续写入该节点的连接，在 pipeline 中则随同一次发送写出
+     * </p>
+     *
+     * @param keys      键
+     * @param chunkSize 每组最多包含的键数量
+     * @return 每组键在 keys 中的下标
+     */
+    @Override
+    protected List<int[]> groupForMget(List<K> keys, int chunkSize) {
+        int size = keys.size();
+        int[] slots = new int[size];
+        // starts[s] 为槽位 s 在 sorted 中的起始位置
+        int[] starts = new int[SlotHash.SLOT_COUNT + 1];
+        for (int i = 0; i < size; i++) {
+            slots[i] = SlotHash.getSlot(config.codec.encodeKey(keys.get(i)));
+            starts[slots[i] + 1]++;
+        }
+        for (int s = 0; s < SlotHash.SLOT_COUNT; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] cursors = Arrays.copyOf(starts, SlotHash.SLOT_COUNT);
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[cursors[slots[i]]++] = i;
+        }
+        ensureConnected();
+        Partitions partitions = config.client.getPartitions();
+        // 拓扑中还没有所属节点的槽位归为一组，由集群连接自行路由
+        Map<RedisClusterNode, List<int[]>> nodes = new LinkedHashMap<>();
+        List<int[]> unknown = new ArrayList<>();
+        for (int s = 0; s < SlotHash.SLOT_COUNT; s++) {
+            if (starts[s] == starts[s + 1]) {
+                continue;
+            }
+            RedisClusterNode node = partitions.getPartitionBySlot(s);
+            List<int[]> groups = node == null ? unknown : nodes.computeIfAbsent(node, n -> new ArrayList<>());
+            for (int from = starts[s]; from < starts[s + 1]; from += chunkSize) {
+                groups.add(Arrays.copyOfRange(sorted, from, Math.min(from + chunkSize, starts[s + 1])));
+            }
+        }
+        List<int[]> groups = new ArrayList<>();
+        nodes.values().forEach(groups::addAll);
+        groups.addAll(unknown);
+        return groups;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,894 @@
+package sunyu.util;
+
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.*;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.support.AsyncConnectionPoolSupport;
+import io.lettuce.core.support.BoundedAsyncPool;
+import io.lettuce.core.support.BoundedPoolConfig;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Redis 单机、主从、哨兵工具类，可指定编解码器
+ * <p>
+ * 键值类型由编解码器决定，例如使用 ByteArrayCodec 或 {@link ByteBufferCodec} 时值不经过字符集解码，
+ * 适合存放 protobuf、压缩数据等二进制内容。键值都是字符串时直接使用 {@link RedisUtil}。
+ * </p>
+ *
+ * <pre>
+ *     TypedRedisUtil&lt;byte[], byte[]&gt; redis = TypedRedisUtil.builder(ByteArrayCodec.INSTANCE)
+ *             .uri("redis://127.0.0.1:6379/0")
+ *             .build();
+ * </pre>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class TypedRedisUtil<K, V>
+        extends AbstractRedisOperations<K, V, RedisCommands<K, V>, RedisAsyncCommands<K, V>>
+        implements AutoCloseable {
+    private final Log log = LogFactory.get();
+    private final Config<K, V> config;
+
+    /**
+     * 创建构建器
+     *
+     * @param codec 编解码器
+     * @param <K>   Redis 键的类型
+     * @param <V>   Redis 值的类型
+     * @return 构建器
+     */
+    public static <K, V> Builder<K, V> builder(RedisCodec<K, V> codec) {
+        return new Builder<>(codec);
+    }
+
+    TypedRedisUtil(Config<K, V> config) {
+        log.info("[构建 {}] 开始", this.getClass().getSimpleName());
+
+        // 1. 创建客户端
+        ClientResources shared = null;
+        if (config.sharedResources != null) {
+            log.info("使用共享客户端资源");
+            shared = config.sharedResources.retain();
+        }
+        try {
+            if (config.metrics) {
+                log.info("开启命令指标");
+                config.redisMetrics = new RedisMetrics(config.metricsName);
+            }
+            if (config.lowestLatency || config.hedgePercentile > 0) {
+                log.info("开启节点延迟跟踪");
+                config.nodeLatencies = new NodeLatencies(config.redisMetrics);
+                if (config.lowestLatency) {
+                    config.readFrom = config.nodeLatencies.readFrom();
+                }
+                if (config.hedgePercentile > 0) {
+                    log.info("开启对冲读取，分位: {} 最小等待: {}ms", config.hedgePercentile, config.hedgeMinDelay);
+                    config.hedgedReads = new HedgedReads(config.hedgePercentile, config.hedgeMinDelay);
+                }
+                config.resources = config.nodeLatencies.createClientResources(shared);
+                config.client = RedisClient.create(config.resources);
+            } else if (config.redisMetrics != null) {
+                config.resources = config.redisMetrics.createClientResources(shared);
+                config.client = RedisClient.create(config.resources);
+            } else if (shared != null) {
+                config.client = RedisClient.create(shared);
+            } else {
+                config.client = RedisClient.create();
+            }
+
+            // 2. 配置客户端选项，命令超时按读、写、扫描、阻塞分别设置
+            log.info("命令超时，读: {}ms 写: {}ms 扫描: {}ms 阻塞: {}ms",
+                    config.readTimeout, config.writeTimeout, config.scanTimeout, config.blockingTimeout);
+            config.commandTimeouts = new CommandTimeouts(config.readTimeout, config.writeTimeout, config.scanTimeout, config.blockingTimeout);
+            ClientOptions clientOptions = ClientOptions.builder()
+                    .timeoutOptions(TimeoutOptions.builder().timeoutCommands().timeoutSource(config.commandTimeouts).build())
+                    .socketOptions(SocketOptions.builder()
+                            .connectTimeout(Duration.ofSeconds(5))   // 连接超时5秒
+                            .keepAlive(true)                        // 启用TCP KeepAlive
+                            .tcpNoDelay(true)
+                            .build())
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .build();
+            config.client.setOptions(clientOptions);
+
+            // 3. 提供所有节点地址
+            List<RedisURI> redisUris = new ArrayList<>();
+            config.redisUris = redisUris;
+
+            if (config.uri.startsWith("redis-sentinel://")) {
+                redisUris.add(RedisURI.create(config.uri));
+            } else {
+                for (String s : config.uri.split(",")) {
+                    redisUris.add(RedisURI.create(s));
+                }
+            }
+
+            if (config.failureThreshold > 0) {
+                log.info("开启节点熔断，连续失败: {} 次 熔断时间: {}ms 最大在途命令数: {}",
+                        config.failureThreshold, config.openDuration, config.maxConcurrency);
+                config.circuitBreakers = new CircuitBreakers(config.failureThreshold, config.openDuration, config.maxConcurrency);
+                // 单机、主从只有一个节点，所有命令共用一个熔断器
+                RedisURI uri = redisUris.get(0);
+                String node = uri.getHost() + ":" + uri.getPort();
+                config.keyNodes = key -> node;
+            }
+
+            if (config.compressionThreshold > 0) {
+                log.info("开启值压缩，阈值: {} 字节", config.compressionThreshold);
+                config.codec = new CompressionCodec<>(config.codec, config.compressionThreshold);
+            }
+
+            if (config.nearCachePrefix != null) {
+                config.nearCache = new NearCache<>(config.codec, config.nearCachePrefix, config.nearCacheCapacity, config.nearCacheTtl);
+            }
+            if (config.singleFlightEnabled) {
+                config.singleFlight = new SingleFlight<>();
+            }
+            if (config.sampleRate > 0) {
+                log.info("开启热点键采样，采样率: {} 计数器数量: {}", config.sampleRate, config.sampleCapacity);
+                config.keySampler = new KeySampler(config.sampleRate, config.sampleCapacity);
+            }
+            this.config = config;
+
+            // 4. 按启动方式建立连接
+            log.info("启动方式: {}", config.startupMode);
+            start(config.startupMode);
+        } catch (RuntimeException e) {
+            // 构建失败时关闭已创建的客户端，归还共享资源的引用
+            shutdown(config);
+            throw e;
+        }
+        log.info("[构建 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void connect() {
+        // 开启多连接时按连接数建立
+        log.info("建立连接，连接数: {} 选择策略: {}", config.connectionCount, config.striping);
+        log.info("设置读取策略: {}", config.readFrom);
+        config.stripes = new ConnectionStripes(config.connectionCount, config.striping);
+        for (int i = 0; i < config.connectionCount; i++) {
+            StatefulRedisMasterReplicaConnection<K, V> connection = MasterReplica.connect(
+                    config.client,
+                    config.codec,
+                    config.redisUris
+            );
+
+            // 设置读取策略
+            connection.setReadFrom(config.readFrom);
+
+            // 创建命令接口
+            RedisCommands<K, V> commands = config.stripes.track(i, RedisCommands.class, connection.sync());
+            RedisAsyncCommands<K, V> asyncCommands = config.stripes.track(i, RedisAsyncCommands.class, connection.async());
+            commands = guard(RedisCommands.class, commands);
+            asyncCommands = guard(RedisAsyncCommands.class, asyncCommands);
+            config.connections.add(connection);
+            config.commands.add(commands);
+            config.asyncCommands.add(asyncCommands);
+        }
+
+        // 独占连接池，阻塞命令和事务借用，连接默认读写主节点
+        config.leasePool = AsyncConnectionPoolSupport.createBoundedObjectPool(
+                () -> MasterReplica.connectAsync(config.client, config.codec, config.redisUris),
+                BoundedPoolConfig.builder()
+                        .maxTotal(config.maxLeasedConnections)
+                        .maxIdle(config.maxLeasedConnections)
+                        .minIdle(0)
+                        .build());
+
+        // 对冲连接按延迟把第二快的节点排在最前面
+        if (config.hedgedReads != null) {
+            config.hedgeConnection = MasterReplica.connect(config.client, config.codec, config.redisUris);
+            config.hedgeConnection.setReadFrom(config.nodeLatencies.readFrom(1));
+        }
+
+        // 开启近端缓存
+        if (config.nearCache != null) {
+            subscribeNearCache(config);
+        }
+    }
+
+    /**
+     * 在每个连接上发送 PING（主节点）和 TIME（只读命令，按读取策略发往从节点），建立到主从节点的连接
+     * <p>
+     * 主从连接不公开单个节点的连接，因此通过不同路由的命令让它建立连接
+     * </p>
+     */
+    @Override
+    protected void warmUp() {
+        log.info("预热连接");
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (RedisAsyncCommands<K, V> commands : config.asyncCommands) {
+            futures.add(commands.ping().toCompletableFuture());
+            futures.add(commands.time().toCompletableFuture());
+        }
+        join(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])));
+        log.info("预热完成");
+    }
+
+    static class Config<K, V> {
+        private RedisClient client;
+        private String uri;
+        private List<RedisURI> redisUris;
+        private StartupMode startupMode = StartupMode.EAGER;
+        private int connectionCount = 1;
+        private ConnectionStriping striping = ConnectionStriping.ROUND_ROBIN;
+        private ConnectionStripes stripes;
+        private final List<StatefulRedisMasterReplicaConnection<K, V>> connections = new ArrayList<>();
+        private final List<RedisCommands<K, V>> commands = new ArrayList<>();
+        private final List<RedisAsyncCommands<K, V>> asyncCommands = new ArrayList<>();
+        private int maxLeasedConnections = DEFAULT_MAX_LEASED_CONNECTIONS;
+        private BoundedAsyncPool<StatefulRedisMasterReplicaConnection<K, V>> leasePool;
+        private volatile StatefulRedisMasterReplicaConnection<K, V> pipelineConnection;
+        private RedisCodec<K, V> codec;
+        private int compressionThreshold;
+        private int mgetChunkSize = DEFAULT_MGET_CHUNK_SIZE;
+        private String nearCachePrefix;
+        private int nearCacheCapacity;
+        private long nearCacheTtl;
+        private NearCache<K, V> nearCache;
+        private final List<StatefulRedisPubSubConnection<String, String>> nearCachePubSubs = new ArrayList<>();
+        private boolean singleFlightEnabled;
+        private SingleFlight<K, V> singleFlight;
+        private double sampleRate;
+        private int sampleCapacity;
+        private KeySampler keySampler;
+        private ReadFrom readFrom = ReadFrom.REPLICA_PREFERRED;
+        private boolean lowestLatency;
+        private double hedgePercentile;
+        private long hedgeMinDelay;
+        private NodeLatencies nodeLatencies;
+        private HedgedReads hedgedReads;
+        private StatefulRedisMasterReplicaConnection<K, V> hedgeConnection;
+        private final Map<ReadFrom, StatefulRedisMasterReplicaConnection<K, V>> readConnections = new ConcurrentHashMap<>();
+        private long readTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long writeTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long scanTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private long blockingTimeout = DEFAULT_COMMAND_TIMEOUT;
+        private CommandTimeouts commandTimeouts;
+        private int failureThreshold;
+        private long openDuration;
+        private int maxConcurrency;
+        private CircuitBreakers circuitBreakers;
+        private Function<Object, String> keyNodes;
+        private boolean metrics;
+        private String metricsName;
+        private RedisMetrics redisMetrics;
+        private ClientResources resources;
+        private SharedClientResources sharedResources;
+
+        Config(RedisCodec<K, V> codec) {
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * 构建器公共部分
+     *
+     * @param <K> Redis 键的类型
+     * @param <V> Redis 值的类型
+     * @param <B> 构建器自身类型
+     */
+    public abstract static class AbstractBuilder<K, V, B extends AbstractBuilder<K, V, B>> {
+        final Config<K, V> config;
+
+        AbstractBuilder(RedisCodec<K, V> codec) {
+            config = new Config<>(codec);
+        }
+
+        @SuppressWarnings("unchecked")
+        private B self() {
+            return (B) this;
+        }
+
+        /**
+         * 设置链接
+         *
+         * <pre>
+         *     redis :// [[username :] password@] host [:port][/database]
+         *           [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&clientName=clientName]
+         *           [&libraryName=libraryName] [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *     rediss :// [[username :] password@] host [: port][/database]
+         *            [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&clientName=clientName]
+         *            [&libraryName=libraryName] [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *     redis-socket :// [[username :] password@]path
+         *                  [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&database=database]
+         *                  [&clientName=clientName] [&libraryName=libraryName]
+         *                  [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * <pre>
+         *     redis-sentinel :// [[username :] password@] host1[:port1] [, host2[:port2]] [, hostN[:portN]] [/database]
+         *                    [?[timeout=timeout[d|h|m|s|ms|us|ns]] [&sentinelMasterId=sentinelMasterId]
+         *                    [&clientName=clientName] [&libraryName=libraryName]
+         *                    [&libraryVersion=libraryVersion] ]
+         * </pre>
+         *
+         * @param uri
+         * @return
+         */
+        public B uri(String uri) {
+            config.uri = uri;
+            return self();
+        }
+
+        /**
+         * 设置批量获取值时每个 MGET 命令最多包含的键数量，默认500
+         *
+         * @param mgetChunkSize 键数量
+         * @return 构建器
+         */
+        public B mgetChunkSize(int mgetChunkSize) {
+            config.mgetChunkSize = mgetChunkSize;
+            return self();
+        }
+
+        /**
+         * 开启值压缩
+         * <p>
+         * 编码后达到阈值的值使用 Deflate 压缩后再写入，读取时自动解压；
+         * 压缩前写入的旧值没有压缩头部，仍可正常读取，详见 {@link CompressionCodec}
+         * </p>
+         *
+         * @param threshold 压缩阈值(字节)，建议4096
+         * @return 构建器
+         */
+        public B compression(int threshold) {
+            config.compressionThreshold = threshold;
+            return self();
+        }
+
+        /**
+         * 开启近端缓存
+         * <p>
+         * get、mget 读取以 keyPrefix 开头的键时优先使用本地缓存，
+         * 需要服务端开启键空间通知，例如 CONFIG SET notify-keyspace-events KA
+         * </p>
+         *
+         * @param keyPrefix 键前缀，例如 farm:realtime:
+         * @param capacity  最大缓存数量
+         * @param ttl       存活时间(毫秒)，0表示不过期
+         * @return 构建器
+         */
+        public B nearCache(String keyPrefix, int capacity, long ttl) {
+            config.nearCachePrefix = keyPrefix;
+            config.nearCacheCapacity = capacity;
+            config.nearCacheTtl = ttl;
+            return self();
+        }
+
+        /**
+         * 开启读取合并，同一个键的并发 get 只发出一个 GET，其他线程等待并共享结果，见 {@link SingleFlight}
+         *
+         * @return 构建器
+         */
+        public B singleFlight() {
+            config.singleFlightEnabled = true;
+            return self();
+        }
+
+        /**
+         * 开启热点键和大键采样，见 {@link KeySampler}
+         *
+         * @param rate     采样率，例如 0.01
+         * @param capacity 每个维度保存的计数器数量，例如 1000
+         * @return 构建器
+         */
+        public B keySampler(double rate, int capacity) {
+            config.sampleRate = rate;
+            config.sampleCapacity = capacity;
+            return self();
+        }
+
+        /**
+         * 设置启动方式，默认构建时同步建立连接，见 {@link StartupMode}
+         *
+         * @param startupMode 启动方式
+         * @return 构建器
+         */
+        public B startup(StartupMode startupMode) {
+            config.startupMode = startupMode;
+            return self();
+        }
+
+        /**
+         * 设置普通命令使用的连接数，默认1
+         * <p>
+         * 多个线程共用一个连接时，大值传输或慢命令会拖慢排在后面的所有调用，多连接可以分散这种影响
+         * </p>
+         *
+         * @param connectionCount 连接数
+         * @return 构建器
+         */
+        public B connections(int connectionCount) {
+            config.connectionCount = connectionCount;
+            return self();
+        }
+
+        /**
+         * 设置多连接时的选择策略，默认轮流使用
+         *
+         * @param striping 选择策略
+         * @return 构建器
+         */
+        public B striping(ConnectionStriping striping) {
+            config.striping = striping;
+            return self();
+        }
+
+        /**
+         * 设置 withConnection 独占连接池的最大连接数，默认8
+         *
+         * @param maxLeasedConnections 最大连接数
+         * @return 构建器
+         */
+        public B maxLeasedConnections(int maxLeasedConnections) {
+            config.maxLeasedConnections = maxLeasedConnections;
+            return self();
+        }
+
+        /**
+         * 设置读命令的读取策略，默认 ReadFrom.REPLICA_PREFERRED，
+         * 例如 ReadFrom.MASTER、ReadFrom.NEAREST 或按机房选择的 {@link ZoneReadFrom}
+         *
+         * @param readFrom 读取策略
+         * @return 构建器
+         */
+        public B readFrom(ReadFrom readFrom) {
+            config.readFrom = readFrom;
+            return self();
+        }
+
+        /**
+         * 按各节点最近的命令延迟选择读取节点
+         * <p>
+         * 每个节点按最近命令延迟的指数加权平均从低到高排序，主从节点都参与，排在最前面的可用节点执行读命令，见 {@link NodeLatencies}；
+         * 从未有过记录的节点视为延迟为0，排在最前面探测一次；超过1秒没有更新的节点保留最后的平均延迟并逐渐衰减，延迟相同的节点保持拓扑中的顺序
+         * </p>
+         * <p>
+         * 主从连接在每个读命令发出时都按当前延迟重新排序选择
+         * </p>
+         *
+         * @return 构建器
+         */
+        public B readFromLowestLatency() {
+            config.lowestLatency = true;
+            return self();
+        }
+
+        /**
+         * 开启对冲读取，get 和 hedgedRead 超过阈值未返回时在延迟第二低的节点上再读一次，见 {@link HedgedReads}
+         *
+         * @param percentile 触发对冲的延迟分位，例如 95
+         * @param minDelay   最小等待时间(毫秒)
+         * @return 构建器
+         */
+        public B hedge(double percentile, long minDelay) {
+            config.hedgePercentile = percentile;
+            config.hedgeMinDelay = minDelay;
+            return self();
+        }
+
+        /**
+         * 读命令（GET、HMGET 等）的超时时间，默认30秒
+         *
+         * @param readTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B readTimeout(long readTimeout) {
+            config.readTimeout = readTimeout;
+            return self();
+        }
+
+        /**
+         * 写命令和其它命令的超时时间，默认30秒
+         *
+         * @param writeTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B writeTimeout(long writeTimeout) {
+            config.writeTimeout = writeTimeout;
+            return self();
+        }
+
+        /**
+         * SCAN、HSCAN 等扫描命令的超时时间，默认30秒
+         *
+         * @param scanTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B scanTimeout(long scanTimeout) {
+            config.scanTimeout = scanTimeout;
+            return self();
+        }
+
+        /**
+         * BLPOP、XREADGROUP 等阻塞命令的超时时间，需大于命令自身的阻塞时间，默认30秒
+         *
+         * @param blockingTimeout 超时时间(毫秒)
+         * @return 构建器
+         */
+        public B blockingTimeout(long blockingTimeout) {
+            config.blockingTimeout = blockingTimeout;
+            return self();
+        }
+
+        /**
+         * 开启按节点的熔断和并发限制，一个故障节点上的命令立即失败，不占用调用线程，见 {@link CircuitBreakers}
+         *
+         * @param failureThreshold 连续超时或连接失败多少次后熔断
+         * @param openDuration     熔断时间(毫秒)，之后放行一个试探命令
+         * @param maxConcurrency   每个节点的最大在途命令数，0表示不限制
+         * @return 构建器
+         */
+        public B circuitBreaker(int failureThreshold, long openDuration, int maxConcurrency) {
+            config.failureThreshold = failureThreshold;
+            config.openDuration = openDuration;
+            config.maxConcurrency = maxConcurrency;
+            return self();
+        }
+
+        /**
+         * 使用共享的客户端资源，多个实例共用一套事件循环和计算线程，最后一个实例关闭时释放
+         *
+         * @param sharedResources 共享资源
+         * @return 构建器
+         */
+        public B sharedResources(SharedClientResources sharedResources) {
+            config.sharedResources = sharedResources;
+            return self();
+        }
+
+        /**
+         * 使用进程内默认的共享客户端资源，见 {@link SharedClientResources#getDefault()}
+         *
+         * @return 构建器
+         */
+        public B sharedResources() {
+            return sharedResources(SharedClientResources.getDefault());
+        }
+
+        /**
+         * 开启命令指标，统计每个命令和节点的延迟分布、吞吐量、失败数、超时数和在途命令数，见 {@link RedisMetrics}
+         *
+         * @return 构建器
+         */
+        public B metrics() {
+            config.metrics = true;
+            return self();
+        }
+
+        /**
+         * 开启命令指标并注册到 JMX，ObjectName 为 sunyu.util:type=RedisMetrics,name=名称
+         *
+         * @param name 名称，同一进程内不能重复
+         * @return 构建器
+         */
+        public B metrics(String name) {
+            config.metrics = true;
+            config.metricsName = name;
+            return self();
+        }
+    }
+
+    public static class Builder<K, V> extends AbstractBuilder<K, V, Builder<K, V>> {
+        Builder(RedisCodec<K, V> codec) {
+            super(codec);
+        }
+
+        public TypedRedisUtil<K, V> build() {
+            return new TypedRedisUtil<>(config);
+        }
+    }
+
+    /**
+     * 回收资源
+     */
+    @Override
+    public void close() {
+        log.info("[销毁 {}] 开始", this.getClass().getSimpleName());
+        if (config.pipelineConnection != null) {
+            config.pipelineConnection.close();
+        }
+        for (StatefulRedisPubSubConnection<String, String> pubSub : config.nearCachePubSubs) {
+            pubSub.close();
+        }
+        if (config.leasePool != null) {
+            config.leasePool.close();
+        }
+        if (config.hedgeConnection != null) {
+            config.hedgeConnection.close();
+        }
+        for (StatefulRedisMasterReplicaConnection<K, V> connection : config.readConnections.values()) {
+            connection.close();
+        }
+        for (StatefulRedisMasterReplicaConnection<K, V> connection : config.connections) {
+            connection.close();
+        }
+        shutdown(config);
+        log.info("[销毁 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    /**
+     * 关闭客户端和客户端资源
+     * <p>
+     * 使用共享资源时，开启指标或延迟跟踪创建的资源是共享资源的副本，与其共用事件循环、计算线程和定时器，
+     * 不能单独关闭，只归还共享资源的引用
+     * </p>
+     */
+    private static void shutdown(Config<?, ?> config) {
+        if (config.client != null) {
+            config.client.shutdown();
+        }
+        if (config.hedgedReads != null) {
+            config.hedgedReads.close();
+        }
+        if (config.resources != null && config.sharedResources == null) {
+            config.resources.shutdown();
+        }
+        if (config.redisMetrics != null) {
+            config.redisMetrics.shutdown();
+        }
+        if (config.sharedResources != null) {
+            config.sharedResources.release();
+        }
+    }
+
+    /**
+     * 获取同步命令对象，开启多连接时按选择策略从连接组中选择
+     *
+     * @return
+     */
+    public RedisCommands<K, V> getCommands() {
+        ensureConnected();
+        return config.commands.get(config.stripes.next());
+    }
+
+    /**
+     * 获取异步命令对象，开启多连接时按选择策略从连接组中选择
+     *
+     * @return
+     */
+    @Override
+    public RedisAsyncCommands<K, V> getAsyncCommands() {
+        ensureConnected();
+        return config.asyncCommands.get(config.stripes.next());
+    }
+
+    /**
+     * 借用一个独占连接执行操作，适合 BLPOP 等阻塞命令、MULTI/EXEC 事务和大值传输
+     * <p>
+     * 连接来自独占连接池，读写都走主节点；操作结束后归还，未执行 EXEC 的事务会先 DISCARD。
+     * 连接池已满时等待其它操作归还连接。
+     * </p>
+     *
+     * @param action 使用同步命令对象的操作
+     * @param <R>    结果类型
+     * @return 操作结果
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R withConnection(Function<RedisCommands<K, V>, R> action) {
+        ensureConnected();
+        StatefulRedisMasterReplicaConnection<K, V> connection = join(config.leasePool.acquire());
+        try {
+            RedisCommands<K, V> commands = connection.sync();
+            commands = guard(RedisCommands.class, commands);
+            return action.apply(commands);
+        } finally {
+            if (connection.isMulti()) {
+                connection.sync().discard();
+            }
+            config.leasePool.release(connection);
+        }
+    }
+
+    /**
+     * 订阅键空间通知，驱动近端缓存失效
+     * <p>
+     * 在每个节点上都订阅（哨兵模式只订阅主节点），任意连接断开或重连时清空近端缓存，因为期间的通知可能已经丢失。
+     * 通知连接固定使用字符串编解码器，频道名中的键按字符串交给近端缓存。
+     * </p>
+     */
+    private void subscribeNearCache(Config<K, V> config) {
+        NearCache<K, V> nearCache = config.nearCache;
+        log.info("开启近端缓存，键前缀: {}", nearCache.getKeyPrefix());
+        config.client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                nearCache.invalidateAll();
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+                nearCache.invalidateAll();
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+            }
+        });
+        String pattern = "__keyspace@*__:" + nearCache.getKeyPrefix() + "*";
+        for (RedisURI redisUri : config.redisUris) {
+            StatefulRedisPubSubConnection<String, String> pubSub = config.client.connectPubSub(StringCodec.UTF8, redisUri);
+            pubSub.addListener(new RedisPubSubAdapter<String, String>() {
+                @Override
+                public void message(String pattern, String channel, String message) {
+                    // __keyspace@0__:farm:realtime:600044
+                    nearCache.invalidate(channel.substring(channel.indexOf("__:") + 3));
+                }
+            });
+            pubSub.sync().psubscribe(pattern);
+            config.nearCachePubSubs.add(pubSub);
+        }
+    }
+
+    /**
+     * 获取批量执行专用连接的异步命令对象，首次调用时建立连接
+     * <p>
+     * 主从连接按需建立到各节点的连接，关闭自动发送后发给还在建立中的节点连接的命令会错过 flushCommands，
+     * 因此建立时先在自动发送下发送 PING（主节点）和 TIME（按读取策略选择的节点）把节点连接建立好，再关闭自动发送
+     * </p>
+     *
+     * @return 异步命令对象
+     */
+    @Override
+    protected RedisAsyncCommands<K, V> getPipelineCommands() {
+        ensureConnected();
+        if (config.pipelineConnection == null) {
+            synchronized (config) {
+                if (config.pipelineConnection == null) {
+                    log.info("建立批量执行专用连接");
+                    StatefulRedisMasterReplicaConnection<K, V> connection =
+                            MasterReplica.connect(config.client, config.codec, config.redisUris);
+                    connection.setReadFrom(config.readFrom);
+                    try {
+                        join(CompletableFuture.allOf(connection.async().ping().toCompletableFuture(),
+                                connection.async().time().toCompletableFuture()));
+                    } catch (RuntimeException e) {
+                        log.warn("预热批量执行专用连接失败: {}", e.getMessage());
+                    }
+                    connection.setAutoFlushCommands(false);
+                    config.pipelineConnection = connection;
+                }
+            }
+        }
+        RedisAsyncCommands<K, V> commands = config.pipelineConnection.async();
+        return guard(RedisAsyncCommands.class, commands);
+    }
+
+    @Override
+    public RedisCommands<K, V> getCommands(ReadFrom readFrom) {
+        RedisCommands<K, V> commands = readConnection(readFrom).sync();
+        return guard(RedisCommands.class, commands);
+    }
+
+    @Override
+    public RedisAsyncCommands<K, V> getAsyncCommands(ReadFrom readFrom) {
+        RedisAsyncCommands<K, V> commands = readConnection(readFrom).async();
+        return guard(RedisAsyncCommands.class, commands);
+    }
+
+    private StatefulRedisMasterReplicaConnection<K, V> readConnection(ReadFrom readFrom) {
+        ensureConnected();
+        StatefulRedisMasterReplicaConnection<K, V> connection = config.readConnections.get(readFrom);
+        if (connection == null) {
+            synchronized (config) {
+                connection = config.readConnections.get(readFrom);
+                if (connection == null) {
+                    log.info("建立读取策略为 {} 的连接", readFrom);
+                    connection = MasterReplica.connect(config.client, config.codec, config.redisUris);
+                    connection.setReadFrom(readFrom);
+                    config.readConnections.put(readFrom, connection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    protected RedisAsyncCommands<K, V> getHedgeCommands() {
+        ensureConnected();
+        RedisAsyncCommands<K, V> commands = config.hedgeConnection.async();
+        return config.redisMetrics == null ? commands : config.redisMetrics.wrap(RedisAsyncCommands.class, commands);
+    }
+
+    @Override
+    public HedgedReads getHedgedReads() {
+        return config.hedgedReads;
+    }
+
+    @Override
+    public NodeLatencies getNodeLatencies() {
+        return config.nodeLatencies;
+    }
+
+    @Override
+    protected RedisCodec<K, V> getCodec() {
+        return config.codec;
+    }
+
+    @Override
+    public NearCache<K, V> getNearCache() {
+        return config.nearCache;
+    }
+
+    @Override
+    public SingleFlight<K, V> getSingleFlight() {
+        return config.singleFlight;
+    }
+
+    @Override
+    public KeySampler getKeySampler() {
+        return config.keySampler;
+    }
+
+    /**
+     * 单机、主从只有当前连接一个节点，名称为第一个地址
+     *
+     * @return 节点名称和命令对象
+     */
+    @Override
+    protected Map<String, RedisAsyncCommands<K, V>> getNodeCommands() {
+        RedisURI uri = config.redisUris.get(0);
+        return Collections.singletonMap(uri.getHost() + ":" + uri.getPort(), getAsyncCommands());
+    }
+
+    /**
+     * 包装命令对象，开启熔断时先经过节点熔断，再统计命令指标
+     */
+    private <C> C guard(Class<C> type, C commands) {
+        if (config.circuitBreakers != null) {
+            commands = config.circuitBreakers.wrap(type, commands, config.keyNodes);
+        }
+        return config.redisMetrics == null ? commands : config.redisMetrics.wrap(type, commands);
+    }
+
+    @Override
+    public CommandTimeouts getCommandTimeouts() {
+        return config.commandTimeouts;
+    }
+
+    @Override
+    public CircuitBreakers getCircuitBreakers() {
+        return config.circuitBreakers;
+    }
+
+    @Override
+    public RedisMetrics getMetrics() {
+        return config.redisMetrics;
+    }
+
+    @Override
+    protected int getMgetChunkSize() {
+        return config.mgetChunkSize;
+    }
+
+}
\ No newline at end of file
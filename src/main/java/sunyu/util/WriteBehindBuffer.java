@@ -0,0 +1,413 @@
+package sunyu.util;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.log.Log;
+import cn.hutool.log.LogFactory;
+import io.lettuce.core.RedisFuture;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 异步写缓冲，合并同一个键的重复写入
+ * <p>
+ * set、setex、hset、expire 只修改内存中该键的待写状态：后写的值覆盖先写的值，多次 hset 的字段合并，
+ * 因此同一个键在一个刷新周期内无论写多少次，最终只发送一次。待写的键数达到 flushSize 或每隔 flushInterval 毫秒刷新一次，
+ * 刷新时按槽位分组（集群）或按数量分组（单机），所有组在批量执行专用连接上一次发送，每组没有过期时间的 SET 合并成一个 MSET。
+ * 同一个键先 set 后 hset 时以最后的类型为准，丢弃缓冲的值，写入时先删除再 HSET。
+ * </p>
+ * <p>
+ * 待写的键数达到 maxPendingKeys 时，写入新键的调用会等待刷新腾出空间；已在缓冲中的键继续合并，不会等待。
+ * close() 会把缓冲中的全部内容写完再返回。写入失败只记录日志和失败数，不会重试，适合只关心最新值的数据。
+ * </p>
+ *
+ * <pre>
+ *     WriteBehindBuffer&lt;String, String&gt; buffer = redis.writeBehind().flushInterval(200).build();
+ *     buffer.setex("farm:realtime:600044", 600, json);
+ *     ...
+ *     buffer.close();
+ * </pre>
+ *
+ * @param <K> Redis 键的类型
+ * @param <V> Redis 值的类型
+ * @author SunYu
+ */
+public class WriteBehindBuffer<K, V> implements AutoCloseable {
+    private final Log log = LogFactory.get();
+    private final Config<K, V> config;
+    private final ConcurrentHashMap<Object, Entry<K, V>> pending = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder flushedKeys = new LongAdder();
+    private final LongAdder failedKeys = new LongAdder();
+    private volatile boolean closed;
+
+    WriteBehindBuffer(Config<K, V> config) {
+        this.config = config;
+        this.permits = new Semaphore(config.maxPendingKeys);
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newNamedThreadFactory("redis-write-behind-", true));
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, config.flushInterval, config.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置值，覆盖该键之前缓冲的值、字段和过期时间
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void set(K key, V value) {
+        update(key, entry -> {
+            entry.value = value;
+            entry.fields = null;
+            entry.expire = 0;
+            entry.replace = false;
+        });
+    }
+
+    /**
+     * 设置值和过期时间
+     *
+     * @param key     键
+     * @param seconds 过期时间(秒)
+     * @param value   值
+     */
+    public void setex(K key, long seconds, V value) {
+        update(key, entry -> {
+            entry.value = value;
+            entry.fields = null;
+            entry.expire = seconds;
+            entry.replace = false;
+        });
+    }
+
+    /**
+     * 设置哈希字段，与该键之前缓冲的字段合并；该键之前缓冲的是 set 的值时丢弃该值及其过期时间，写入时先删除再 HSET
+     *
+     * @param key   键
+     * @param field 字段
+     * @param value 值
+     */
+    public void hset(K key, K field, V value) {
+        update(key, entry -> entry.hash().put(field, value));
+    }
+
+    /**
+     * 设置多个哈希字段，与 {@link #hset(Object, Object, Object)} 相同
+     *
+     * @param key 键
+     * @param map 字段和值
+     */
+    public void hset(K key, Map<K, V> map) {
+        update(key, entry -> entry.hash().putAll(map));
+    }
+
+    /**
+     * 设置过期时间，与缓冲的值一起写入时合并成 SETEX
+     *
+     * @param key     键
+     * @param seconds 过期时间(秒)，需要大于0
+     */
+    public void expire(K key, long seconds) {
+        update(key, entry -> entry.expire = seconds);
+    }
+
+    private void update(K key, Consumer<Entry<K, V>> action) {
+        if (closed) {
+            throw new IllegalStateException("写缓冲已关闭");
+        }
+        writes.increment();
+        Object name = name(key);
+        if (!pending.containsKey(name)) {
+            if (!permits.tryAcquire()) {
+                requestFlush();
+                permits.acquireUninterruptibly();
+            }
+            boolean[] created = new boolean[1];
+            pending.compute(name, (k, entry) -> {
+                if (entry == null) {
+                    entry = new Entry<>(key);
+                    created[0] = true;
+                }
+                action.accept(entry);
+                return entry;
+            });
+            if (!created[0]) {
+                permits.release();
+            }
+        } else {
+            pending.compute(name, (k, entry) -> {
+                if (entry == null) {
+                    // 刚被刷新取走，这次写入不占用许可，下次刷新时一起写出
+                    entry = new Entry<>(key);
+                    entry.unbounded = true;
+                }
+                action.accept(entry);
+                return entry;
+            });
+        }
+        if (pending.size() >= config.flushSize) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * byte[] 等数组类型的键按内容比较
+     */
+    private static Object name(Object key) {
+        return key instanceof byte[] ? ByteBuffer.wrap((byte[]) key) : key;
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true) && !scheduler.isShutdown()) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("刷新写缓冲失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 立即把当前缓冲的内容写入 Redis，等待写完后返回
+     *
+     * @return 写入的键数量
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            List<K> keys = new ArrayList<>(pending.size());
+            List<Entry<K, V>> entries = new ArrayList<>(pending.size());
+            for (Object name : pending.keySet()) {
+                Entry<K, V> entry = pending.remove(name);
+                if (entry != null) {
+                    keys.add(entry.key);
+                    entries.add(entry);
+                    if (!entry.unbounded) {
+                        permits.release();
+                    }
+                }
+            }
+            if (keys.isEmpty()) {
+                return 0;
+            }
+            write(config.redis.groupForMget(keys, config.flushSize), keys, entries);
+            return keys.size();
+        }
+    }
+
+    /**
+     * 所有组在同一批命令中发送，只等待一次；每组没有过期时间的 SET 合并成一个 MSET，按组统计成功和失败
+     */
+    private void write(List<int[]> groups, List<K> keys, List<Entry<K, V>> entries) {
+        List<List<RedisFuture<?>>> groupFutures = new ArrayList<>(groups.size());
+        RuntimeException error = null;
+        try {
+            config.redis.pipeline(p -> {
+                for (int[] group : groups) {
+                    List<RedisFuture<?>> futures = new ArrayList<>();
+                    Map<K, V> mset = new LinkedHashMap<>();
+                    for (int index : group) {
+                        K key = keys.get(index);
+                        Entry<K, V> entry = entries.get(index);
+                        if (entry.value != null) {
+                            if (entry.expire > 0) {
+                                futures.add(p.setex(key, entry.expire, entry.value));
+                            } else {
+                                mset.put(key, entry.value);
+                            }
+                        }
+                        if (entry.fields != null) {
+                            if (entry.replace) {
+                                futures.add(p.del(key));
+                            }
+                            futures.add(p.hset(key, entry.fields));
+                        }
+                        if (entry.value == null && entry.expire > 0) {
+                            futures.add(p.expire(key, entry.expire));
+                        }
+                    }
+                    if (!mset.isEmpty()) {
+                        futures.add(p.command(a -> a.mset(mset)));
+                    }
+                    groupFutures.add(futures);
+                }
+            });
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        int failed = 0;
+        for (int i = 0; i < groupFutures.size(); i++) {
+            int size = groups.get(i).length;
+            boolean ok = error == null || groupFutures.get(i).stream()
+                    .noneMatch(f -> f.toCompletableFuture().isCompletedExceptionally());
+            if (ok) {
+                flushedKeys.add(size);
+            } else {
+                failedKeys.add(size);
+                failed += size;
+            }
+        }
+        // 添加命令时出错，之后的组没有发出
+        for (int i = groupFutures.size(); i < groups.size(); i++) {
+            failedKeys.add(groups.get(i).length);
+            failed += groups.get(i).length;
+        }
+        if (error != null) {
+            log.warn("写入 {} 个键失败: {}", failed, error.getMessage());
+        }
+    }
+
+    /**
+     * @return 缓冲中待写的键数量
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return 调用写入方法的次数
+     */
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    /**
+     * @return 已写入 Redis 的键数量，与 getWriteCount() 的比值即合并比例
+     */
+    public long getFlushedCount() {
+        return flushedKeys.sum();
+    }
+
+    /**
+     * @return 写入失败的键数量
+     */
+    public long getFailedCount() {
+        return failedKeys.sum();
+    }
+
+    /**
+     * 停止接收写入，写完缓冲中的全部内容后返回
+     */
+    @Override
+    public void close() {
+        log.info("[销毁 {}] 开始", this.getClass().getSimpleName());
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        while (flush() > 0) {
+            // 关闭前正在写入的调用可能又放入了新键
+        }
+        log.info("写入次数: {} 写入键数: {} 失败键数: {}", getWriteCount(), getFlushedCount(), getFailedCount());
+        log.info("[销毁 {}] 结束", this.getClass().getSimpleName());
+    }
+
+    private static class Entry<K, V> {
+        final K key;
+        V value;
+        Map<K, V> fields;
+        long expire;
+        /**
+         * 缓冲的值被 hset 替换，写入时先删除旧的字符串
+         */
+        boolean replace;
+        /**
+         * 刷新期间新建且没有占用许可
+         */
+        boolean unbounded;
+
+        Entry(K key) {
+            this.key = key;
+        }
+
+        /**
+         * 以最后一次写入的类型为准，之前缓冲的字符串值连同其过期时间一起丢弃
+         */
+        Map<K, V> hash() {
+            if (value != null) {
+                value = null;
+                expire = 0;
+                replace = true;
+            }
+            if (fields == null) {
+                fields = new LinkedHashMap<>();
+            }
+            return fields;
+        }
+    }
+
+    static class Config<K, V> {
+        private final AbstractRedisOperations<K, V, ?, ?> redis;
+        private int maxPendingKeys = 100000;
+        private int flushSize = 1000;
+        private long flushInterval = 100;
+
+        Config(AbstractRedisOperations<K, V, ?, ?> redis) {
+            this.redis = redis;
+        }
+    }
+
+    public static class Builder<K, V> {
+        private final Config<K, V> config;
+
+        Builder(AbstractRedisOperations<K, V, ?, ?> redis) {
+            config = new Config<>(redis);
+        }
+
+        /**
+         * 最多缓冲多少个不同的键，默认100000，达到后写入新键的调用等待刷新
+         *
+         * @param maxPendingKeys 键数量
+         * @return 构建器
+         */
+        public Builder<K, V> maxPendingKeys(int maxPendingKeys) {
+            config.maxPendingKeys = maxPendingKeys;
+            return this;
+        }
+
+        /**
+         * 待写的键达到多少个时立即刷新，同时也是每批发送的最大键数，默认1000
+         *
+         * @param flushSize 键数量
+         * @return 构建器
+         */
+        public Builder<K, V> flushSize(int flushSize) {
+            config.flushSize = flushSize;
+            return this;
+        }
+
+        /**
+         * 定时刷新间隔(毫秒)，默认100，即同一个键最多延迟这么久写入
+         *
+         * @param flushInterval 间隔
+         * @return 构建器
+         */
+        public Builder<K, V> flushInterval(long flushInterval) {
+            config.flushInterval = flushInterval;
+            return this;
+        }
+
+        public WriteBehindBuffer<K, V> build() {
+            return new WriteBehindBuffer<>(config);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package sunyu.util;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.models.role.RedisInstance;
+import io.lettuce.core.models.role.RedisNodeDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 优先读取同一机房的节点
+ * <p>
+ * 地址以任一前缀开头的节点视为同机房，例如 "10.1." 或 "redis-a-"。
+ * 选择顺序：同机房从节点、同机房主节点、其他从节点、其他主节点。
+ * </p>
+ *
+ * <pre>
+ *     RedisClusterUtil redis = new RedisClusterUtil.Builder()
+ *             .nodes("...")
+ *             .readFrom(new ZoneReadFrom("10.1."))
+ *             .build();
+ * </pre>
+ *
+ * @author SunYu
+ */
+public class ZoneReadFrom extends ReadFrom {
+    private final List<String> hostPrefixes;
+
+    /**
+     * 创建读取策略
+     *
+     * @param hostPrefixes 同机房节点的地址前缀
+     */
+    public ZoneReadFrom(String... hostPrefixes) {
+        this.hostPrefixes = Arrays.asList(hostPrefixes);
+    }
+
+    @Override
+    public List<RedisNodeDescription> select(Nodes nodes) {
+        List<RedisNodeDescription> selected = new ArrayList<>();
+        for (boolean local : new boolean[]{true, false}) {
+            for (boolean master : new boolean[]{false, true}) {
+                for (RedisNodeDescription node : nodes) {
+                    if ((node.getRole() == RedisInstance.Role.MASTER) == master && local(node) == local) {
+                        selected.add(node);
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private boolean local(RedisNodeDescription node) {
+        String host = node.getUri().getHost();
+        for (String prefix : hostPrefixes) {
+            if (host.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean isOrderSensitive() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Zone" + hostPrefixes;
+    }
+
+}
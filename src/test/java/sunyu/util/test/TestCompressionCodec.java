@@ -0,0 +1,85 @@
+package sunyu.util.test;
+
+import cn.hutool.core.util.RandomUtil;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import org.junit.jupiter.api.Test;
+import sunyu.util.CompressionCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压缩编解码器的正确性，不需要 Redis，编解码耗时见 jmh 中的 CompressionBenchmark
+ */
+public class TestCompressionCodec {
+
+    private static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 128).append('[');
+        while (sb.length() < size) {
+            sb.append("{\"did\":\"").append(RandomUtil.randomNumbers(6))
+                    .append("\",\"lon\":").append(RandomUtil.randomDouble(73, 135, 6, java.math.RoundingMode.HALF_UP))
+                    .append(",\"lat\":").append(RandomUtil.randomDouble(18, 53, 6, java.math.RoundingMode.HALF_UP))
+                    .append(",\"ts\":").append(System.currentTimeMillis())
+                    .append(",\"speed\":").append(RandomUtil.randomInt(0, 120))
+                    .append(",\"status\":\"").append(RandomUtil.randomEle(new String[]{"WORKING", "IDLE", "OFFLINE"}))
+                    .append("\"},");
+        }
+        return sb.append("{}]").toString();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void roundTrip() {
+        CompressionCodec<String, String> codec = new CompressionCodec<>(StringCodec.UTF8, 4096);
+        for (int size : new int[]{4096, 10 * 1024, 200 * 1024}) {
+            String value = json(size);
+            ByteBuffer encoded = codec.encodeValue(value);
+            assertTrue(encoded.remaining() < StringCodec.UTF8.encodeValue(value).remaining(), "应当压缩");
+            assertEquals(value, codec.decodeValue(encoded));
+        }
+        // 不可压缩的随机数据按原样保存，也能解码
+        CompressionCodec<byte[], byte[]> binary = new CompressionCodec<>(ByteArrayCodec.INSTANCE, 16);
+        byte[] random = RandomUtil.randomBytes(8192);
+        ByteBuffer encoded = binary.encodeValue(random);
+        assertArrayEquals(random, bytes(encoded));
+        assertArrayEquals(random, binary.decodeValue(encoded));
+    }
+
+    @Test
+    void belowThreshold() {
+        CompressionCodec<String, String> codec = new CompressionCodec<>(StringCodec.UTF8, 4096);
+        String value = json(1024);
+        ByteBuffer encoded = codec.encodeValue(value);
+        assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), bytes(encoded));
+        assertEquals(value, codec.decodeValue(encoded));
+    }
+
+    @Test
+    void legacyValues() {
+        // 开启压缩前写入的文本
+        CompressionCodec<String, String> codec = new CompressionCodec<>(StringCodec.UTF8, 16);
+        String json = json(10 * 1024);
+        assertEquals(json, codec.decodeValue(StringCodec.UTF8.encodeValue(json)));
+
+        // 恰好以头部标记开头的二进制旧值：长度不合理、zlib 头不合法、zlib 数据损坏时都按原样返回
+        CompressionCodec<byte[], byte[]> binary = new CompressionCodec<>(ByteArrayCodec.INSTANCE, 16);
+        byte[] small = {0x00, 0x01, 0x00, 0x00, 0x00, 0x02, 0x78, (byte) 0x9C, 0x01, 0x02};
+        assertArrayEquals(small, binary.decodeValue(ByteBuffer.wrap(small)));
+        byte[] header = {0x00, 0x01, 0x00, 0x01, 0x00, 0x00, 0x11, 0x22, 0x33, 0x44};
+        assertArrayEquals(header, binary.decodeValue(ByteBuffer.wrap(header)));
+        byte[] corrupt = bytes(binary.encodeValue(json.getBytes(StandardCharsets.UTF_8)));
+        corrupt[corrupt.length / 2] ^= 0x5A;
+        corrupt[corrupt.length / 2 + 1] ^= 0x5A;
+        assertArrayEquals(corrupt, binary.decodeValue(ByteBuffer.wrap(corrupt)));
+    }
+}
@@ -1,17 +1,53 @@
 package sunyu.util.test;
 
+import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.log.Log;
 import cn.hutool.log.LogFactory;
 import cn.hutool.setting.dialect.Props;
 import io.lettuce.core.KeyValue;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 import org.junit.jupiter.api.Test;
+import sunyu.util.BigKeys;
+import sunyu.util.ConnectionStriping;
+import sunyu.util.GeoIndex;
+import sunyu.util.HashColumns;
+import sunyu.util.HedgedReads;
+import sunyu.util.KeySampler;
+import sunyu.util.KeySnapshot;
+import sunyu.util.LuaScript;
 import sunyu.util.RedisClusterUtil;
+import sunyu.util.RedisMetrics;
 import sunyu.util.RedisUtil;
+import sunyu.util.SharedClientResources;
+import sunyu.util.StartupMode;
+import sunyu.util.StreamConsumer;
+import sunyu.util.TypedRedisClusterUtil;
+import sunyu.util.WriteBehindBuffer;
 import sunyu.util.test.config.ConfigProperties;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class TestRedisUtil {
     Log log = LogFactory.get();
@@ -41,6 +77,19 @@ public class TestRedisUtil {
         clusterUtil.close();
     }
 
+    @Test
+    void testScanBatch() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        AtomicLong total = new AtomicLong();
+        clusterUtil.scanBatch("p:r:v:*", 500, keys -> total.addAndGet(keys.size()));
+        log.info("{}", total.get());
+
+        clusterUtil.close();
+    }
+
     @Test
     void testMget() {
         RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
@@ -53,6 +102,51 @@ public class TestRedisUtil {
         clusterUtil.close();
     }
 
+    @Test
+    void testScanStream() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        try (Stream<KeyValue<String, String>> stream = clusterUtil.scanValues("farm:realtime:*", 500)) {
+            log.info("{}", stream.limit(1000).count());
+        }
+        log.info("{}", clusterUtil.scanStream("farm:realtime:*", 500).count());
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testMgetValues() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .mgetChunkSize(200)
+                .build();
+
+        List<String> keys = Arrays.asList("farm:realtime:600044", "abc", "farm:realtime:600179");
+        List<String> values = clusterUtil.mgetValues(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            log.info("{} {}", keys.get(i), values.get(i));
+        }
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testNearCache() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .nearCache("farm:realtime:", 10000, 60 * 1000)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            clusterUtil.get("farm:realtime:600044");
+        }
+        log.info("hit {} miss {}", clusterUtil.getNearCache().getHitCount(), clusterUtil.getNearCache().getMissCount());
+
+        clusterUtil.close();
+    }
+
     @Test
     void testMget2() {
         RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
@@ -84,6 +178,23 @@ public class TestRedisUtil {
         clusterUtil.close();
     }
 
+    @Test
+    void testPipeline() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        List<Object> results = clusterUtil.pipeline(p -> {
+            for (int i = 0; i < 1000; i++) {
+                p.setex("test:pipeline:" + i, 60, String.valueOf(i));
+            }
+            p.get("test:pipeline:0");
+        });
+        log.info("{} {}", results.size(), results.get(results.size() - 1));
+
+        clusterUtil.close();
+    }
+
     @Test
     void testStandalone() {
         RedisUtil standaloneUtil = new RedisUtil.Builder()
@@ -95,6 +206,347 @@ public class TestRedisUtil {
         standaloneUtil.close();
     }
 
+    @Test
+    void testTypedCluster() {
+        TypedRedisClusterUtil<String, byte[]> clusterUtil = TypedRedisClusterUtil
+                .builder(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE))
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        byte[] v = clusterUtil.get("p:r:d:600243");
+        log.info("{}", v == null ? null : v.length);
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testGeoBatch() {
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .build();
+        double[] lons = {86.018138, 116.397128, 121.473701};
+        double[] lats = {28.283572, 39.916527, 31.230416};
+        List<String> members = standaloneUtil.georadiusWithCountOne("pca:tianditu", lons, lats, 1000);
+        log.info("{}", members);
+
+        standaloneUtil.close();
+    }
+
+    @Test
+    void testGeoIndex() {
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .build();
+        try (GeoIndex<String, String> index = standaloneUtil.geoIndex("pca:tianditu", 600)) {
+            String local = index.nearest(86.018138, 28.283572, 1000);
+            String remote = standaloneUtil.georadiusWithCountOne("pca:tianditu", 86.018138, 28.283572, 1000);
+            log.info("{} {} {}", index.size(), local, remote);
+        }
+
+        standaloneUtil.close();
+    }
+
+    @Test
+    void testMetrics() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .metrics("cluster")
+                .build();
+
+        for (int i = 0; i < 1000; i++) {
+            clusterUtil.get("farm:realtime:600044");
+        }
+        clusterUtil.mgetValues(Arrays.asList("farm:realtime:600044", "abc", "farm:realtime:600179"));
+        RedisMetrics metrics = clusterUtil.getMetrics();
+        log.info("in-flight {} errors {} timeouts {} tps {}", metrics.getInFlight(), metrics.getErrorCount(), metrics.getTimeoutCount(), metrics.getThroughput());
+        metrics.getCommandStats().values().forEach(stats -> log.info("{}", stats));
+        metrics.getNodeStats().values().forEach(stats -> log.info("{}", stats));
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testConnections() {
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .connections(4)
+                .striping(ConnectionStriping.LEAST_OUTSTANDING)
+                .build();
+
+        // 阻塞命令占用独占连接，不影响普通命令
+        CompletableFuture<KeyValue<String, String>> blocked = CompletableFuture.supplyAsync(
+                () -> standaloneUtil.withConnection(commands -> commands.blpop(5, "test:connections:queue")));
+        for (int i = 0; i < 100; i++) {
+            standaloneUtil.get("farm:realtime:600044");
+        }
+        List<Object> result = standaloneUtil.withConnection(commands -> {
+            commands.multi();
+            commands.incr("test:connections:counter");
+            commands.expire("test:connections:counter", 60);
+            return commands.exec().stream().collect(Collectors.toList());
+        });
+        log.info("{} {}", result, blocked.join());
+
+        standaloneUtil.close();
+    }
+
+    @Test
+    void testSharedResources() {
+        SharedClientResources resources = new SharedClientResources(2, 2);
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .sharedResources(resources)
+                .build();
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .sharedResources(resources)
+                .metrics()
+                .build();
+        log.info("{} {} references {}", standaloneUtil.get("farm:realtime:600044"), clusterUtil.get("farm:realtime:600044"), resources.getReferences());
+
+        standaloneUtil.close();
+        log.info("references {} {}", resources.getReferences(), clusterUtil.get("farm:realtime:600044"));
+        clusterUtil.close();
+        log.info("references {}", resources.getReferences());
+    }
+
+    @Test
+    void testStartup() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .startup(StartupMode.WARM_UP)
+                .build();
+        clusterUtil.ready().join();
+        log.info("{} {}", clusterUtil.isConnected(), clusterUtil.get("farm:realtime:600044"));
+        clusterUtil.close();
+
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .startup(StartupMode.LAZY)
+                .build();
+        log.info("{}", standaloneUtil.isConnected());
+        log.info("{} {}", standaloneUtil.get("farm:realtime:600044"), standaloneUtil.ready().isDone());
+        standaloneUtil.close();
+    }
+
+    @Test
+    void testStreamConsumer() {
+        RedisUtil standaloneUtil = new RedisUtil.Builder()
+                .uri(props.getStr("redis.standalone.uri"))
+                .build();
+
+        List<Map<String, String>> bodies = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Map<String, String> body = new HashMap<>();
+            body.put("id", String.valueOf(i));
+            bodies.add(body);
+        }
+        AtomicLong consumed = new AtomicLong();
+        StreamConsumer<String, String> consumer = standaloneUtil.streamConsumer("test:stream", "test", "consumer-1", message -> consumed.incrementAndGet())
+                .count(500)
+                .workers(8)
+                .build();
+        long start = System.currentTimeMillis();
+        standaloneUtil.xaddBatch("test:stream", bodies, 100000);
+        while (consumed.get() < bodies.size()) {
+            ThreadUtil.sleep(10);
+        }
+        log.info("{} 条/秒", bodies.size() * 1000L / Math.max(1, System.currentTimeMillis() - start));
+
+        consumer.close();
+        standaloneUtil.close();
+    }
+
+    @Test
+    void testScript() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        LuaScript incrExpire = clusterUtil.script("local v = redis.call('INCR', KEYS[1]) redis.call('EXPIRE', KEYS[1], ARGV[1]) return v");
+        for (int i = 0; i < 10; i++) {
+            Long v = clusterUtil.eval(incrExpire, ScriptOutputType.INTEGER, new String[]{"test:script:" + i}, "60");
+            log.info("{} {}", incrExpire.getSha(), v);
+        }
+        Long v = clusterUtil.<Long>evalAsync(incrExpire, ScriptOutputType.INTEGER, new String[]{"test:script:0"}, "60").join();
+        log.info("{}", v);
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testWriteBehind() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        WriteBehindBuffer<String, String> buffer = clusterUtil.writeBehind().flushInterval(200).build();
+        for (int i = 0; i < 10000; i++) {
+            buffer.setex("test:writeBehind:" + (i % 100), 60, String.valueOf(i));
+            buffer.hset("test:writeBehind:hash:" + (i % 10), "f" + (i % 5), String.valueOf(i));
+        }
+        buffer.close();
+        log.info("写入次数: {} 写入键数: {}", buffer.getWriteCount(), buffer.getFlushedCount());
+        log.info("{}", clusterUtil.getCommands().get("test:writeBehind:99"));
+        log.info("{}", clusterUtil.getCommands().hgetall("test:writeBehind:hash:9"));
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testSingleFlight() throws InterruptedException {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .singleFlight()
+                .build();
+
+        clusterUtil.getCommands().del("test:singleFlight");
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        for (int i = 0; i < 500; i++) {
+            executor.execute(() -> {
+                clusterUtil.get("test:singleFlight:hot");
+                clusterUtil.getOrLoad("test:singleFlight", key -> {
+                    loads.incrementAndGet();
+                    ThreadUtil.sleep(100);
+                    return "v";
+                }, 60);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        log.info("加载次数: {} 执行: {} 共享: {}", loads.get(),
+                clusterUtil.getSingleFlight().getExecutedCount(), clusterUtil.getSingleFlight().getSharedCount());
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testReadFrom() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .readFromLowestLatency()
+                .hedge(95, 2)
+                .build();
+
+        clusterUtil.getCommands().set("test:readFrom", "v");
+        log.info("{}", clusterUtil.getCommands(ReadFrom.MASTER).get("test:readFrom"));
+        for (int i = 0; i < 10000; i++) {
+            clusterUtil.get("test:readFrom");
+        }
+        log.info("{}", clusterUtil.hedgedRead(c -> c.strlen("test:readFrom")).join());
+        log.info("节点延迟: {}", clusterUtil.getNodeLatencies().getLatencies());
+        HedgedReads hedgedReads = clusterUtil.getHedgedReads();
+        log.info("读取: {} 对冲: {} 对冲先返回: {} 阈值: {}ms", hedgedReads.getReadCount(), hedgedReads.getHedgedCount(),
+                hedgedReads.getBackupWinCount(), hedgedReads.getThreshold());
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testHotKeys() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .keySampler(0.1, 1000)
+                .build();
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add("farm:realtime:" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            clusterUtil.get("farm:realtime:" + (i % 10 == 0 ? 0 : i % 1000));
+        }
+        clusterUtil.mgetValues(keys);
+        KeySampler sampler = clusterUtil.getKeySampler();
+        log.info("热点键: {}", sampler.getHotKeys(10));
+        log.info("热点前缀: {}", sampler.getHotPrefixes(10));
+        log.info("大键: {}", sampler.getBigKeys(10));
+
+        for (BigKeys bigKeys : clusterUtil.analyzeBigKeys("farm:*", 500, 10).values()) {
+            log.info("{}", bigKeys);
+        }
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testLargeValue() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        byte[] data = new byte[10 * 1024 * 1024 + 123];
+        ThreadLocalRandom.current().nextBytes(data);
+        long written = clusterUtil.writeStream("test:largeValue", new ByteArrayInputStream(data), 256 * 1024, 600);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long read = clusterUtil.readStream("test:largeValue", out, 256 * 1024);
+        log.info("写入: {} 读取: {} 一致: {}", written, read, Arrays.equals(data, out.toByteArray()));
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testSnapshot() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"), "farm.snapshot");
+        KeySnapshot exported = clusterUtil.exportKeys("farm:realtime:*", 1000, file);
+        log.info("导出: {}", exported);
+        KeySnapshot imported = clusterUtil.importKeys(file, 1000, true);
+        log.info("导入: {}", imported);
+
+        clusterUtil.close();
+    }
+
+    @Test
+    void testHashColumns() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .build();
+
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add("farm:columns:" + i);
+        }
+        HashColumns<String, String> columns = new HashColumns<>(keys, Arrays.asList("lat", "lon"));
+        for (int i = 0; i < keys.size(); i++) {
+            columns.set(i, 0, String.valueOf(30 + i * 0.001));
+            columns.set(i, 1, String.valueOf(120 + i * 0.001));
+        }
+        log.info("新增字段: {}", clusterUtil.hsetColumns(columns));
+
+        HashColumns<String, String> read = clusterUtil.hmgetColumns(keys, "lat", "lon", "ts");
+        log.info("lat: {}", read.getColumn("lat").subList(0, 10));
+        log.info("ts: {}", read.getColumn("ts").subList(0, 10));
+
+        HashColumns<String, String> all = clusterUtil.hgetallColumns(keys);
+        log.info("字段: {} 行数: {}", all.getFields(), all.size());
+
+        clusterUtil.getCommands().del(keys.toArray(new String[0]));
+        clusterUtil.close();
+    }
+
+    @Test
+    void testTimeouts() {
+        RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()
+                .nodes(props.getStr("redis.cluster.nodes"))
+                .readTimeout(200)
+                .writeTimeout(1000)
+                .circuitBreaker(5, 3000, 1000)
+                .build();
+
+        log.info("{}", clusterUtil.get("farm:realtime:600044", 50));
+        Map<String, String> values = clusterUtil.withTimeout(100, () -> clusterUtil.mget("farm:realtime:600044", "farm:realtime:600045"));
+        log.info("{}", values);
+        log.info("熔断节点: {} 拒绝: {}", clusterUtil.getCircuitBreakers().getOpenNodes(),
+                clusterUtil.getCircuitBreakers().getRejectedCount());
+
+        clusterUtil.close();
+    }
+
     @Test
     void testSet() {
         RedisClusterUtil clusterUtil = new RedisClusterUtil.Builder()